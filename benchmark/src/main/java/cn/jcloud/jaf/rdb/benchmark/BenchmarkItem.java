@@ -0,0 +1,56 @@
+package cn.jcloud.jaf.rdb.benchmark;
+
+import cn.jcloud.jaf.common.base.domain.BaseDomain;
+
+import javax.persistence.Entity;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.util.Date;
+
+/**
+ * 基准测试实体
+ */
+@Entity
+public class BenchmarkItem extends BaseDomain<Long> {
+
+    private String name;
+
+    private Integer status;
+
+    private Long score;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdTime;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public Long getScore() {
+        return score;
+    }
+
+    public void setScore(Long score) {
+        this.score = score;
+    }
+
+    public Date getCreatedTime() {
+        return createdTime;
+    }
+
+    public void setCreatedTime(Date createdTime) {
+        this.createdTime = createdTime;
+    }
+}
@@ -0,0 +1,162 @@
+package cn.jcloud.jaf.rdb.benchmark;
+
+import cn.jcloud.jaf.common.handler.SpringContextHolder;
+import cn.jcloud.jaf.common.query.Condition;
+import cn.jcloud.jaf.common.query.ListParam;
+import cn.jcloud.jaf.rdb.index.EntityIndex;
+import org.hibernate.cfg.Environment;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+import org.springframework.orm.jpa.persistenceunit.PersistenceUnitPostProcessor;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.ValidationMode;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 基准测试公共环境：Spring上下文、H2内存库及ListParam构造
+ */
+final class BenchmarkSupport {
+
+    /*
+     * 与idgScript约定一致：ARGV依次为key、过期秒数、掩码、位数，返回"剩余秒数,计数"
+     */
+    private static final String IDG_SCRIPT = "local n = redis.call('INCR', ARGV[1]) "
+            + "if n == 1 then redis.call('EXPIRE', ARGV[1], ARGV[2]) end "
+            + "return redis.call('TTL', ARGV[1]) .. ',' .. n";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * 初始化SpringContextHolder，redisPort大于0时注册id生成器使用的redis
+     */
+    static GenericApplicationContext initSpringContext(int redisPort) {
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBeanDefinition("springContextHolder", new RootBeanDefinition(SpringContextHolder.class));
+        if (redisPort > 0) {
+            JedisConnectionFactory connectionFactory = new JedisConnectionFactory();
+            connectionFactory.setPort(redisPort);
+            connectionFactory.afterPropertiesSet();
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+            DefaultRedisScript<String> script = new DefaultRedisScript<>(IDG_SCRIPT, String.class);
+            context.getBeanFactory().registerSingleton("idgRedisTemplate", redisTemplate);
+            context.getBeanFactory().registerSingleton("idgScript", script);
+        }
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * 基于H2(MySQL兼容模式)的EntityManagerFactory
+     */
+    static EntityManagerFactory createEntityManagerFactory() {
+        return createEntityManagerFactory(false);
+    }
+
+    /**
+     * 基于H2(MySQL兼容模式)的EntityManagerFactory
+     *
+     * @param useEntityIndex 是否按编译期生成的实体索引注册实体，否则扫描包
+     */
+    static EntityManagerFactory createEntityManagerFactory(boolean useEntityIndex) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+        vendorAdapter.setGenerateDdl(true);
+        vendorAdapter.setShowSql(false);
+
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setJpaVendorAdapter(vendorAdapter);
+        String basePackage = BenchmarkSupport.class.getPackage().getName();
+        final List<String> indexed = useEntityIndex
+                ? EntityIndex.load(BenchmarkSupport.class.getClassLoader(), basePackage) : null;
+        if (indexed == null) {
+            factory.setPackagesToScan(basePackage);
+        } else {
+            factory.setPackagesToScan();
+            factory.setPersistenceUnitPostProcessors(new PersistenceUnitPostProcessor() {
+                @Override
+                public void postProcessPersistenceUnitInfo(MutablePersistenceUnitInfo pui) {
+                    for (String className : indexed) {
+                        pui.addManagedClassName(className);
+                    }
+                }
+            });
+        }
+        factory.setDataSource(dataSource);
+        factory.getJpaPropertyMap().put("hibernate.ejb.naming_strategy", "org.hibernate.cfg.ImprovedNamingStrategy");
+        factory.getJpaPropertyMap().put(Environment.DIALECT, "org.hibernate.dialect.H2Dialect");
+        factory.getJpaPropertyMap().put(Environment.HBM2DDL_AUTO, "create-drop");
+        factory.getJpaPropertyMap().put(Environment.STATEMENT_BATCH_SIZE, "50");
+        factory.setValidationMode(ValidationMode.NONE);
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    static List<BenchmarkItem> items(int count) {
+        List<BenchmarkItem> items = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            BenchmarkItem item = new BenchmarkItem();
+            item.setName("item" + i);
+            item.setStatus(i % 4);
+            item.setScore((long) i);
+            item.setCreatedTime(new Date(now - i * 1000L));
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * 构造包含conditionCount个条件的ListParam，条件依次轮换使用实体各字段
+     */
+    static ListParam<BenchmarkItem> listParam(int conditionCount, int offset, int limit, boolean count) {
+        List<Condition> conditions = new ArrayList<>(conditionCount);
+        for (int i = 0; i < conditionCount; i++) {
+            switch (i % 4) {
+                case 0:
+                    conditions.add(condition("status", "GE", 0, Integer.class));
+                    break;
+                case 1:
+                    conditions.add(condition("score", "LE", Long.MAX_VALUE, Long.class));
+                    break;
+                case 2:
+                    conditions.add(condition("name", "LIKE", "item%", String.class));
+                    break;
+                default:
+                    conditions.add(condition("createdTime", "LE", new Date(), Date.class));
+                    break;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        ListParam<BenchmarkItem> listParam = BeanUtils.instantiateClass(ListParam.class);
+        DirectFieldAccessor accessor = new DirectFieldAccessor(listParam);
+        accessor.setPropertyValue("conditions", conditions);
+        accessor.setPropertyValue("offset", offset);
+        accessor.setPropertyValue("limit", limit);
+        accessor.setPropertyValue("count", count);
+        return listParam;
+    }
+
+    private static Condition condition(String field, String operator, Object value, Class<?> valueType) {
+        Condition condition = BeanUtils.instantiateClass(Condition.class);
+        DirectFieldAccessor accessor = new DirectFieldAccessor(condition);
+        accessor.setPropertyValue("field", field);
+        accessor.setPropertyValue("operator", operator);
+        accessor.setPropertyValue("value", value);
+        accessor.setPropertyValue("valueType", valueType);
+        return condition;
+    }
+}
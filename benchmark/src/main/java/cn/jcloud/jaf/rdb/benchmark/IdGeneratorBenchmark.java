@@ -0,0 +1,81 @@
+package cn.jcloud.jaf.rdb.benchmark;
+
+import cn.jcloud.jaf.rdb.id.DistributedIdentifierGenerator;
+import org.hibernate.id.IdentifierGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericApplicationContext;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * id生成多线程竞争，分别测试同步取号/号段模式及是否使用redis集群计数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    private static final int REDIS_PORT = 16379;
+
+    @Param({"legacy", DistributedIdentifierGenerator.MODE_SEGMENT})
+    private String mode;
+
+    @Param({"false", "true"})
+    private boolean redis;
+
+    private RedisServer redisServer;
+
+    private GenericApplicationContext context;
+
+    private DistributedIdentifierGenerator generator;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int port = 0;
+        if (redis) {
+            port = REDIS_PORT;
+            redisServer = new RedisServer(port);
+            redisServer.start();
+        }
+        context = BenchmarkSupport.initSpringContext(port);
+        Properties params = new Properties();
+        params.setProperty(IdentifierGenerator.JPA_ENTITY_NAME, BenchmarkItem.class.getSimpleName());
+        params.setProperty(DistributedIdentifierGenerator.MODE_PARAM, mode);
+        generator = new DistributedIdentifierGenerator();
+        generator.configure(null, params, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Serializable nextId() {
+        return generator.generate(null, null);
+    }
+}
@@ -0,0 +1,96 @@
+package cn.jcloud.jaf.rdb.benchmark;
+
+import cn.jcloud.jaf.common.query.ListParam;
+import cn.jcloud.jaf.rdb.base.repository.ListParamJpaUtil;
+import cn.jcloud.jaf.rdb.base.repository.ListParamQueryCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericApplicationContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ListParam查询构建与翻译耗时，按条件个数对比Criteria全量构建与查询语句缓存命中
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListParamBuildBenchmark {
+
+    @Param({"1", "4", "16"})
+    private int conditionCount;
+
+    private GenericApplicationContext context;
+
+    private EntityManagerFactory emf;
+
+    private EntityManager em;
+
+    private ListParam<BenchmarkItem> listParam;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkSupport.initSpringContext(0);
+        emf = BenchmarkSupport.createEntityManagerFactory();
+        em = emf.createEntityManager();
+        listParam = BenchmarkSupport.listParam(conditionCount, 0, 20, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        emf.close();
+        context.close();
+    }
+
+    @Benchmark
+    public Query buildAndTranslate() {
+        return translate();
+    }
+
+    @Benchmark
+    public Query cachedBuild() {
+        ListParamQueryCache queryCache = ListParamJpaUtil.getQueryCache();
+        String key = ListParamQueryCache.key("list", BenchmarkItem.class, listParam.getConditions(), null);
+        TypedQuery<BenchmarkItem> query = queryCache.createQuery(em, key, BenchmarkItem.class);
+        if (query == null) {
+            query = translate();
+            queryCache.put(key, query);
+            return query;
+        }
+        ListParamJpaUtil.buildParameter(listParam.getConditions(), query);
+        return query;
+    }
+
+    private TypedQuery<BenchmarkItem> translate() {
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<BenchmarkItem> criteriaQuery = builder.createQuery(BenchmarkItem.class);
+        Root<BenchmarkItem> root = criteriaQuery.from(BenchmarkItem.class);
+        criteriaQuery.select(root);
+        ListParamJpaUtil.buildPredicates(builder, criteriaQuery, root, listParam.getConditions());
+        TypedQuery<BenchmarkItem> query = em.createQuery(criteriaQuery);
+        ListParamJpaUtil.buildParameter(listParam.getConditions(), query);
+        return query;
+    }
+}
@@ -0,0 +1,100 @@
+package cn.jcloud.jaf.rdb.benchmark;
+
+import cn.jcloud.jaf.common.query.Items;
+import cn.jcloud.jaf.common.query.ListParam;
+import cn.jcloud.jaf.rdb.base.repository.BaseRepositoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BaseRepositoryImpl端到端查询(列表及总数)，基于H2内存库
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    private static final int ROWS = 10000;
+
+    @Param({"0", "5000"})
+    private int offset;
+
+    @Param({"2"})
+    private int conditionCount;
+
+    private GenericApplicationContext context;
+
+    private EntityManagerFactory emf;
+
+    private EntityManager em;
+
+    private BaseRepositoryImpl<BenchmarkItem, Long> repository;
+
+    private ListParam<BenchmarkItem> countParam;
+
+    private ListParam<BenchmarkItem> pageParam;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        context = BenchmarkSupport.initSpringContext(0);
+        emf = BenchmarkSupport.createEntityManagerFactory();
+        em = emf.createEntityManager();
+        JpaEntityInformation<BenchmarkItem, Long> entityInformation = (JpaEntityInformation<BenchmarkItem, Long>)
+                JpaEntityInformationSupport.getEntityInformation(BenchmarkItem.class, em);
+        repository = new BaseRepositoryImpl<>(entityInformation, em);
+        em.getTransaction().begin();
+        repository.saveAllBatched(BenchmarkSupport.items(ROWS));
+        em.getTransaction().commit();
+        countParam = BenchmarkSupport.listParam(conditionCount, offset, 20, true);
+        pageParam = BenchmarkSupport.listParam(conditionCount, offset, 20, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        em.close();
+        emf.close();
+        context.close();
+    }
+
+    @Benchmark
+    public Items<BenchmarkItem> listWithCount() {
+        Items<BenchmarkItem> items = repository.list(countParam);
+        em.clear();
+        return items;
+    }
+
+    @Benchmark
+    public Items<BenchmarkItem> list() {
+        Items<BenchmarkItem> items = repository.list(pageParam);
+        em.clear();
+        return items;
+    }
+
+    @Benchmark
+    public Items<Map<String, Object>> listFields() {
+        return repository.listFields(pageParam, "id", "name", "status");
+    }
+}
@@ -0,0 +1,38 @@
+package cn.jcloud.jaf.rdb.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EntityManagerFactory冷启动耗时，对比包扫描与编译期实体索引
+ * 每次fork只构建一次，测量的是含类加载在内的首次构建时间
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    @Param({"scan", "index"})
+    private String registration;
+
+    @Benchmark
+    public EntityManagerFactory bootstrap() {
+        EntityManagerFactory emf = BenchmarkSupport.createEntityManagerFactory("index".equals(registration));
+        emf.close();
+        return emf;
+    }
+}
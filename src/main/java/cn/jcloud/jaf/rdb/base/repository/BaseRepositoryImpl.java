@@ -1,27 +1,59 @@
 package cn.jcloud.jaf.rdb.base.repository;
 
 import cn.jcloud.jaf.common.base.domain.BaseDomain;
-import cn.jcloud.jaf.common.base.repository.BaseRepository;
+import cn.jcloud.jaf.common.constant.ErrorCode;
+import cn.jcloud.jaf.common.exception.JafI18NException;
 import cn.jcloud.jaf.common.query.Items;
 import cn.jcloud.jaf.common.query.ListParam;
+import cn.jcloud.jaf.rdb.shard.ShardRouter;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.id.PostInsertIdentifierGenerator;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.repository.support.JpaEntityInformation;
 import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
 
 import javax.persistence.EntityManager;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Dao基础实现
+ * 配置分片后，{@link cn.jcloud.jaf.rdb.shard.Sharded}实体的保存、删除及按主键查询路由到所在分片，
+ * 列表查询并行查询全部分片后归并；其余查询及批量删除仅支持未分片实体，分片实体调用时抛出异常。
+ * 未分片实体的操作进入默认分片，事务已绑定其它分片时抛出异常。
+ * 分片键不是主键的分片实体按主键查询时在全部分片上查询，返回游离态实体，读写事务中调用时抛出异常。
  * Created by wei Han on 2016/1/19.
  */
 public class BaseRepositoryImpl<T extends BaseDomain<I>, I extends Serializable> extends SimpleJpaRepository<T, I>
-        implements BaseRepository<T, I> {
+        implements RDBRepository<T, I> {
 
+    public static final int DEFAULT_FLUSH_SIZE = 1000;
+
+    private final JpaEntityInformation<T, I> entityInformation;
     private final EntityManager em;
     private final Class<T> domainType;
+    private final ShardRouter shardRouter = ShardRouter.getInstance();
+    private final WriteBehindBuffer writeBehindBuffer = WriteBehindBuffer.getInstance();
 
     public BaseRepositoryImpl(JpaEntityInformation<T, I> entityInformation, EntityManager entityManager) {
         super(entityInformation, entityManager);
+        this.entityInformation = entityInformation;
         this.em = entityManager;
         this.domainType = entityInformation.getJavaType();
     }
@@ -29,7 +61,436 @@ public class BaseRepositoryImpl<T extends BaseDomain<I>, I extends Serializable>
 
     @Override
     public Items<T> list(ListParam<T> listParam) {
-        return ListParamJpaUtil.list(this.em, listParam, this.domainType);
+        if (shardRouter.isSharded(domainType)) {
+            return ShardedListQuery.list(em.getEntityManagerFactory(), listParam, domainType);
+        }
+        Integer previous = enterUnsharded();
+        try {
+            return ListParamJpaUtil.list(this.em, listParam, this.domainType);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public ListenableFuture<Items<T>> listAsync(ListParam<T> listParam) {
+        return ListParamJpaUtil.listAsync(em.getEntityManagerFactory(), listParam, domainType);
+    }
+
+    @Transactional
+    @Override
+    public <S extends T> S save(S entity) {
+        if (shardRouter.getShardCount() <= 1) {
+            return super.save(entity);
+        }
+        if (shardRouter.isSharded(domainType) && routedById() && entityInformation.getId(entity) == null) {
+            //分片键为待生成的主键：persist只生成主键不执行语句，生成后将所在分片绑定到事务，
+            //语句在flush时于该分片执行；事务已在其它分片上执行过语句时抛出异常
+            assertNotPostInsertId();
+            em.persist(entity);
+            shardRouter.exit(shardRouter.enter(shardRouter.shardOfEntity(entity)));
+            return entity;
+        }
+        Integer previous = shardRouter.enter(shardRouter.shardOfEntity(entity));
+        try {
+            return super.save(entity);
+        } finally {
+            shardRouter.exit(previous);
+        }
     }
 
-}
\ No newline at end of file
+    @Override
+    public T findOne(I id) {
+        if (!shardRouter.isSharded(domainType)) {
+            Integer previous = enterUnsharded();
+            try {
+                return super.findOne(id);
+            } finally {
+                exitShard(previous);
+            }
+        }
+        if (!routedById()) {
+            assertNoWriteTransaction();
+            return ShardedListQuery.find(em.getEntityManagerFactory(), domainType, id);
+        }
+        Integer previous = shardRouter.enter(shardRouter.shardOf(id));
+        try {
+            return super.findOne(id);
+        } finally {
+            shardRouter.exit(previous);
+        }
+    }
+
+    @Override
+    public boolean exists(I id) {
+        if (!shardRouter.isSharded(domainType)) {
+            Integer previous = enterUnsharded();
+            try {
+                return super.exists(id);
+            } finally {
+                exitShard(previous);
+            }
+        }
+        if (!routedById()) {
+            return findOne(id) != null;
+        }
+        Integer previous = shardRouter.enter(shardRouter.shardOf(id));
+        try {
+            return super.exists(id);
+        } finally {
+            shardRouter.exit(previous);
+        }
+    }
+
+    @Transactional
+    @Override
+    public void delete(T entity) {
+        if (shardRouter.getShardCount() <= 1) {
+            super.delete(entity);
+            return;
+        }
+        Integer previous = shardRouter.enter(shardRouter.shardOfEntity(entity));
+        try {
+            super.delete(entity);
+        } finally {
+            shardRouter.exit(previous);
+        }
+    }
+
+    /**
+     * 分片实体按主键路由时返回引用，否则不支持
+     */
+    @Override
+    public T getOne(I id) {
+        if (!shardRouter.isSharded(domainType)) {
+            Integer previous = enterUnsharded();
+            try {
+                return super.getOne(id);
+            } finally {
+                exitShard(previous);
+            }
+        }
+        if (!routedById()) {
+            throw JafI18NException.of("分片实体" + domainType.getSimpleName() + "不支持该查询", ErrorCode.INVALID_QUERY);
+        }
+        //引用初始化时的查询在事务已绑定的分片上执行
+        shardRouter.exit(shardRouter.enter(shardRouter.shardOf(id)));
+        return super.getOne(id);
+    }
+
+    @Override
+    public List<T> findAll() {
+        Integer previous = enterUnsharded();
+        try {
+            return super.findAll();
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public List<T> findAll(Iterable<I> ids) {
+        Integer previous = enterUnsharded();
+        try {
+            return super.findAll(ids);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public List<T> findAll(Sort sort) {
+        Integer previous = enterUnsharded();
+        try {
+            return super.findAll(sort);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public Page<T> findAll(Pageable pageable) {
+        Integer previous = enterUnsharded();
+        try {
+            return super.findAll(pageable);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public T findOne(Specification<T> spec) {
+        Integer previous = enterUnsharded();
+        try {
+            return super.findOne(spec);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public List<T> findAll(Specification<T> spec) {
+        Integer previous = enterUnsharded();
+        try {
+            return super.findAll(spec);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public Page<T> findAll(Specification<T> spec, Pageable pageable) {
+        Integer previous = enterUnsharded();
+        try {
+            return super.findAll(spec, pageable);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public List<T> findAll(Specification<T> spec, Sort sort) {
+        Integer previous = enterUnsharded();
+        try {
+            return super.findAll(spec, sort);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public long count() {
+        Integer previous = enterUnsharded();
+        try {
+            return super.count();
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public long count(Specification<T> spec) {
+        Integer previous = enterUnsharded();
+        try {
+            return super.count(spec);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Transactional
+    @Override
+    public void deleteAll() {
+        Integer previous = enterUnsharded();
+        try {
+            super.deleteAll();
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Transactional
+    @Override
+    public void deleteInBatch(Iterable<T> entities) {
+        Integer previous = enterUnsharded();
+        try {
+            super.deleteInBatch(entities);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Transactional
+    @Override
+    public void deleteAllInBatch() {
+        Integer previous = enterUnsharded();
+        try {
+            super.deleteAllInBatch();
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    private boolean routedById() {
+        return entityInformation.getIdAttribute().getName().equals(shardRouter.getShardKey(domainType));
+    }
+
+    /*
+     * 分片键不是主键时按主键查询需在全部分片上并行查询，结果为其它线程中加载的游离态实体，
+     * 在读写事务中修改不会被保存、延迟加载的关联会抛出异常，因此读写事务中不支持
+     */
+    private void assertNoWriteTransaction() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            throw JafI18NException.of("分片键不是主键的分片实体" + domainType.getSimpleName()
+                    + "不能在读写事务中按主键查询", ErrorCode.INVALID_QUERY);
+        }
+    }
+
+    private void assertNotSharded() {
+        if (shardRouter.isSharded(domainType)) {
+            throw JafI18NException.of("分片实体" + domainType.getSimpleName() + "不支持该查询", ErrorCode.INVALID_QUERY);
+        }
+    }
+
+    /*
+     * 未分片实体的操作：配置了分片时进入默认分片，当前事务已绑定其它分片时抛出异常，而不是在该分片上执行；
+     * 分片实体不支持，抛出异常
+     *
+     * @return 之前所在分片，用于exitShard恢复
+     */
+    private Integer enterUnsharded() {
+        assertNotSharded();
+        return shardRouter.getShardCount() > 1 ? shardRouter.enter(0) : null;
+    }
+
+    private void exitShard(Integer previous) {
+        if (shardRouter.getShardCount() > 1) {
+            shardRouter.exit(previous);
+        }
+    }
+
+    /*
+     * 数据库生成的主键在persist时即执行插入，无法事先确定所在分片
+     */
+    private void assertNotPostInsertId() {
+        SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) em.unwrap(Session.class)
+                .getSessionFactory();
+        if (sessionFactory.getIdentifierGenerator(domainType.getName()) instanceof PostInsertIdentifierGenerator) {
+            throw JafI18NException.of("以主键分片的实体" + domainType.getSimpleName() + "不能使用数据库生成的主键",
+                    ErrorCode.INVALID_ARGUMENT);
+        }
+    }
+
+    @Override
+    public KeysetPage<T> list(ListParam<T> listParam, String cursor) {
+        Integer previous = enterUnsharded();
+        try {
+            return ListParamJpaUtil.seek(this.em, listParam, this.domainType, cursor);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public ListResult<T> list(ListParam<T> listParam, CountMode countMode) {
+        Integer previous = enterUnsharded();
+        try {
+            return ListParamJpaUtil.list(this.em, listParam, this.domainType, countMode);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public Items<Map<String, Object>> listFields(ListParam<T> listParam, String... fields) {
+        Integer previous = enterUnsharded();
+        try {
+            return ListParamJpaUtil.listFields(this.em, listParam, this.domainType, fields);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public <D> Items<D> listFields(ListParam<T> listParam, Class<D> resultType, String... fields) {
+        Integer previous = enterUnsharded();
+        try {
+            return ListParamJpaUtil.listFields(this.em, listParam, this.domainType, resultType, fields);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    @Override
+    public CloseableIterator<T> stream(ListParam<T> listParam) {
+        Integer previous = enterUnsharded();
+        try {
+            return ListParamJpaUtil.stream(this.em, listParam, this.domainType, true);
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Transactional
+    @Override
+    public <S extends T> int saveAllBatched(Iterator<S> entities, int flushSize) {
+        Assert.isTrue(flushSize > 0, "flushSize must be positive");
+        Integer previous = enterUnsharded();
+        try {
+            int count = 0;
+            while (entities.hasNext()) {
+                S entity = entities.next();
+                if (entityInformation.isNew(entity)) {
+                    em.persist(entity);
+                } else {
+                    em.merge(entity);
+                }
+                if (++count % flushSize == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            if (count % flushSize != 0) {
+                em.flush();
+                em.clear();
+            }
+            return count;
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Transactional
+    @Override
+    public <S extends T> int saveAllBatched(Iterable<S> entities) {
+        return saveAllBatched(entities.iterator(), DEFAULT_FLUSH_SIZE);
+    }
+
+    @Override
+    public List<T> findAllByIdsBatched(Iterable<I> ids) {
+        Integer previous = enterUnsharded();
+        try {
+            Set<I> idSet = new LinkedHashSet<>();
+            for (I id : ids) {
+                idSet.add(id);
+            }
+            List<I> distinctIds = new ArrayList<>(idSet);
+            if (distinctIds.isEmpty()) {
+                return Collections.emptyList();
+            }
+            String jpql = "select x from " + entityInformation.getEntityName() + " x where x."
+                    + entityInformation.getIdAttribute().getName() + " in :ids";
+            List<T> result = new ArrayList<>(distinctIds.size());
+            for (int c = 0, chunks = InParameters.chunkCount(distinctIds.size()); c < chunks; c++) {
+                result.addAll(em.createQuery(jpql, domainType)
+                        .setParameter("ids", InParameters.chunk(distinctIds, c))
+                        .getResultList());
+            }
+            return result;
+        } finally {
+            exitShard(previous);
+        }
+    }
+
+    @Override
+    public void incrementLater(I id, String field, long delta) {
+        writeBehindBuffer.increment(em.getEntityManagerFactory(), domainType, id, field, delta);
+    }
+
+    @Override
+    public void setLater(I id, String field, Object value) {
+        writeBehindBuffer.set(em.getEntityManagerFactory(), domainType, id, field, value);
+    }
+
+    @Override
+    public void evictCache(I id) {
+        em.getEntityManagerFactory().getCache().evict(domainType, id);
+    }
+
+    @Override
+    public void evictCache() {
+        em.getEntityManagerFactory().getCache().evict(domainType);
+    }
+}
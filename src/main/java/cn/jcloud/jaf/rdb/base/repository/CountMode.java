@@ -0,0 +1,19 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+/**
+ * 总数统计方式，首页数据不足一页时总数可直接得出，任何方式下均不再执行count查询
+ */
+public enum CountMode {
+    /**
+     * 执行count查询，结果精确
+     */
+    EXACT,
+    /**
+     * 按查询形态及参数缓存总数，过期前直接返回缓存值，结果可能滞后
+     */
+    CACHED,
+    /**
+     * 无查询条件时使用information_schema中的表行数估算，InnoDB下误差可能较大；有查询条件时同{@link #EXACT}
+     */
+    ESTIMATED
+}
@@ -0,0 +1,119 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.base.domain.BaseDomain;
+import cn.jcloud.jaf.common.constant.ErrorCode;
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import cn.jcloud.jaf.common.util.ReflectUtil;
+
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * BaseDomain类型条件值的转换器
+ * 每个类型仅在首次使用时解析id类型并查找构造函数，之后直接以id构造引用；
+ * 类型为实体且提供EntityManager时使用{@link EntityManager#getReference(Class, Object)}，不查询数据库。
+ */
+final class DomainReferenceConverter {
+
+    private static final ConcurrentMap<Class<?>, DomainReferenceConverter> CONVERTERS = new ConcurrentHashMap<>();
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(BaseDomain.class);
+
+    private final Class<?> domainType;
+
+    private final boolean longId;
+
+    /*
+     * 无参构造函数，查找失败时为null，使用时再报错
+     */
+    private final MethodHandle constructor;
+
+    /*
+     * 是否为实体，首次获得EntityManager时确定
+     */
+    private volatile Boolean entity;
+
+    private DomainReferenceConverter(Class<?> domainType) {
+        this.domainType = domainType;
+        this.longId = Long.class.equals(ReflectUtil.getGenericParameter(domainType)[0]);
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup()
+                    .findConstructor(domainType, MethodType.methodType(void.class))
+                    .asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            handle = null;
+        }
+        this.constructor = handle;
+    }
+
+    static DomainReferenceConverter of(Class<?> domainType) {
+        DomainReferenceConverter converter = CONVERTERS.get(domainType);
+        if (converter == null) {
+            DomainReferenceConverter created = new DomainReferenceConverter(domainType);
+            converter = CONVERTERS.putIfAbsent(domainType, created);
+            if (converter == null) {
+                converter = created;
+            }
+        }
+        return converter;
+    }
+
+    /**
+     * @param em    可为null，为null时以构造函数构造
+     * @param value id值
+     * @return 仅含id的引用
+     */
+    Object convert(EntityManager em, Object value) {
+        Serializable id = toId(value);
+        if (em != null && isEntity(em)) {
+            return em.getReference(domainType, id);
+        }
+        if (constructor == null) {
+            throw JafI18NException.of("无法实例类型" + domainType.getCanonicalName()
+                    + ",可能由于缺少无参构造函数", ErrorCode.INVALID_ARGUMENT);
+        }
+        BaseDomain domain;
+        try {
+            domain = (BaseDomain) constructor.invokeExact();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw JafI18NException.of("无法实例类型" + domainType.getCanonicalName(), ErrorCode.INVALID_ARGUMENT, e);
+        }
+        domain.setId(id);
+        return domain;
+    }
+
+    private Serializable toId(Object value) {
+        if (!longId) {
+            return (Serializable) value;
+        }
+        if (value instanceof Long) {
+            return (Long) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return Long.parseLong(String.valueOf(value));
+    }
+
+    private boolean isEntity(EntityManager em) {
+        Boolean isEntity = entity;
+        if (isEntity == null) {
+            try {
+                em.getMetamodel().entity(domainType);
+                isEntity = Boolean.TRUE;
+            } catch (IllegalArgumentException e) {
+                isEntity = Boolean.FALSE;
+            }
+            entity = isEntity;
+        }
+        return isEntity;
+    }
+}
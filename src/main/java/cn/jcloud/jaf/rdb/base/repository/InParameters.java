@@ -0,0 +1,76 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * IN参数分批与补齐
+ * 每批至多{@link #CHUNK_SIZE}个参数，不足时以最后一个值补齐到2的幂，使不同长度的IN列表仅产生少量不同的sql，
+ * 便于语句缓存复用。
+ */
+final class InParameters {
+
+    static final int CHUNK_SIZE = 512;
+
+    private InParameters() {
+    }
+
+    /**
+     * 将集合、数组或逗号分隔的字符串转为列表
+     */
+    static List<Object> toList(Object value) {
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (value instanceof Collection) {
+            return new ArrayList<Object>((Collection<?>) value);
+        }
+        if (value.getClass().isArray()) {
+            return new ArrayList<Object>(CollectionUtils.arrayToList(value));
+        }
+        if (value instanceof String) {
+            return new ArrayList<Object>(Arrays.asList(StringUtils.commaDelimitedListToStringArray((String) value)));
+        }
+        return new ArrayList<>(Collections.singletonList(value));
+    }
+
+    static int size(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size();
+        }
+        if (value != null && value.getClass().isArray()) {
+            return java.lang.reflect.Array.getLength(value);
+        }
+        return toList(value).size();
+    }
+
+    static int chunkCount(int size) {
+        return (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    /**
+     * @return 第index批参数，已补齐
+     */
+    static List<Object> chunk(List<?> values, int index) {
+        int from = index * CHUNK_SIZE;
+        int to = Math.min(from + CHUNK_SIZE, values.size());
+        int size = to - from;
+        int padded = Integer.highestOneBit(size);
+        if (padded < size) {
+            padded <<= 1;
+        }
+        List<Object> chunk = new ArrayList<>(padded);
+        chunk.addAll(values.subList(from, to));
+        Object last = values.get(to - 1);
+        while (chunk.size() < padded) {
+            chunk.add(last);
+        }
+        return chunk;
+    }
+}
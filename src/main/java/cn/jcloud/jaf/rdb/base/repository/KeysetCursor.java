@@ -0,0 +1,93 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.constant.ErrorCode;
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.data.domain.Sort;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Date;
+
+/**
+ * 游标编解码，对调用方不透明
+ * 游标由排序形态的哈希及排序字段值依次URL编码后以'~'拼接而成，空值编码为'!'(URL编码后的值不会出现该字符)；
+ * 解码时校验排序形态，游标不能用于不同排序的查询。
+ */
+final class KeysetCursor {
+
+    private static final String SEPARATOR = "~";
+
+    private static final String NULL = "!";
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final ConversionService CONVERSION_SERVICE = new DefaultConversionService();
+
+    private KeysetCursor() {
+    }
+
+    static String encode(Sort sort, Object[] values) {
+        StringBuilder sb = new StringBuilder(sortHash(sort));
+        try {
+            for (Object value : values) {
+                sb.append(SEPARATOR);
+                if (value == null) {
+                    sb.append(NULL);
+                    continue;
+                }
+                String text = value instanceof Date ? String.valueOf(((Date) value).getTime()) : String.valueOf(value);
+                sb.append(URLEncoder.encode(text, CHARSET));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 排序字段值，空值为null
+     */
+    static Object[] decode(String cursor, Sort sort, Class<?>[] types) {
+        String[] parts = cursor.split(SEPARATOR, -1);
+        if (parts.length != types.length + 1) {
+            throw JafI18NException.of("非法的分页游标", ErrorCode.INVALID_QUERY);
+        }
+        if (!sortHash(sort).equals(parts[0])) {
+            throw JafI18NException.of("分页游标与当前排序不符", ErrorCode.INVALID_QUERY);
+        }
+        Object[] values = new Object[types.length];
+        try {
+            for (int i = 0; i < types.length; i++) {
+                String part = parts[i + 1];
+                values[i] = NULL.equals(part) ? null : convert(URLDecoder.decode(part, CHARSET), types[i]);
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        } catch (RuntimeException e) {
+            throw JafI18NException.of("非法的分页游标", ErrorCode.INVALID_QUERY, e);
+        }
+        return values;
+    }
+
+    private static String sortHash(Sort sort) {
+        StringBuilder sb = new StringBuilder();
+        for (Sort.Order order : sort) {
+            sb.append(order.getProperty()).append(',').append(order.getDirection()).append(';');
+        }
+        return Integer.toHexString(sb.toString().hashCode());
+    }
+
+    private static Object convert(String text, Class<?> type) {
+        if (Date.class.isAssignableFrom(type)) {
+            try {
+                return type.getConstructor(long.class).newInstance(Long.parseLong(text));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        return CONVERSION_SERVICE.convert(text, type);
+    }
+}
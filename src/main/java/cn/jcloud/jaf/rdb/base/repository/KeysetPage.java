@@ -0,0 +1,33 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.query.Items;
+
+/**
+ * 游标分页结果
+ */
+public class KeysetPage<T> {
+
+    private final Items<T> items;
+
+    /*
+     * 下一页游标，为null时表示没有更多数据
+     */
+    private final String cursor;
+
+    public KeysetPage(Items<T> items, String cursor) {
+        this.items = items;
+        this.cursor = cursor;
+    }
+
+    public Items<T> getItems() {
+        return items;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean hasNext() {
+        return cursor != null;
+    }
+}
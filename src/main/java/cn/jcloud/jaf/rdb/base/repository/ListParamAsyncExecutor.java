@@ -0,0 +1,200 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureTask;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ListParam异步查询执行器
+ * 每个任务在独立线程中以独立的EntityManager执行，使用独立连接，不参与调用方事务；
+ * 任务线程标记为只读事务，配置了从库时路由到从库，EntityManager以只读、不自动flush方式打开，结果为游离态实体。
+ * 并发数有上限，超出时任务排队，队列满时拒绝；并发数应小于连接池maxActive，避免异步查询占满连接池。
+ * 运行在支持虚拟线程的JDK上时可开启虚拟线程，此时并发数仍由信号量限制，
+ * 未完成的任务数(执行中与等待中)上限与平台线程池的并发数加队列长度相同，超出时拒绝。
+ */
+public class ListParamAsyncExecutor implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListParamAsyncExecutor.class);
+
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    /*
+     * 排队倍数，平台线程池的队列长度与虚拟线程的等待任务上限均为并发数的该倍数
+     */
+    private static final int QUEUE_FACTOR = 16;
+
+    private volatile int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+    private volatile boolean virtualThreads;
+
+    private ExecutorService executor;
+
+    private Semaphore permits;
+
+    private Semaphore pendingSlots;
+
+    public <R> ListenableFuture<R> submit(final EntityManagerFactory emf, final EntityManagerCallback<R> callback) {
+        final Semaphore semaphore;
+        final Semaphore slots;
+        ExecutorService service;
+        synchronized (this) {
+            if (executor == null) {
+                start();
+            }
+            service = executor;
+            semaphore = permits;
+            slots = pendingSlots;
+        }
+        if (slots != null && !slots.tryAcquire()) {
+            throw new RejectedExecutionException("异步查询任务已满，最大并发" + maxConcurrency);
+        }
+        ListenableFutureTask<R> task = new ListenableFutureTask<R>(new Callable<R>() {
+            @Override
+            public R call() throws Exception {
+                if (semaphore != null) {
+                    semaphore.acquire();
+                }
+                try {
+                    return execute(emf, callback);
+                } finally {
+                    if (semaphore != null) {
+                        semaphore.release();
+                    }
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                //完成、异常或取消时均释放，取消的任务不会再执行call
+                if (slots != null) {
+                    slots.release();
+                }
+                super.done();
+            }
+        };
+        try {
+            service.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (slots != null) {
+                slots.release();
+            }
+            throw new RejectedExecutionException("异步查询任务已满，最大并发" + maxConcurrency, e);
+        }
+        return task;
+    }
+
+    private static <R> R execute(EntityManagerFactory emf, EntityManagerCallback<R> callback) {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        EntityManager em = emf.createEntityManager();
+        try {
+            Session session = em.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setFlushMode(FlushMode.MANUAL);
+            return callback.doInEntityManager(em);
+        } finally {
+            em.close();
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+    }
+
+    private void start() {
+        int concurrency = Math.max(1, maxConcurrency);
+        if (virtualThreads) {
+            ExecutorService service = newVirtualThreadExecutor();
+            if (service != null) {
+                executor = service;
+                permits = new Semaphore(concurrency);
+                pendingSlots = new Semaphore(concurrency * (QUEUE_FACTOR + 1));
+                return;
+            }
+            LOG.warn("当前JDK不支持虚拟线程，使用平台线程池");
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(concurrency, concurrency, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(concurrency * QUEUE_FACTOR), new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jaf-rdb-async-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+        permits = null;
+        pendingSlots = null;
+    }
+
+    /*
+     * JDK 21起提供，源码级别为1.7，只能反射调用
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 设置最大并发数，对之后创建的线程池生效
+     */
+    public synchronized void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+        close();
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public synchronized void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        close();
+    }
+
+    /**
+     * 关闭当前线程池，已提交的任务继续执行；再次提交时重新创建
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+            permits = null;
+            pendingSlots = null;
+        }
+    }
+
+    /**
+     * 异步任务回调，EntityManager由执行器创建并关闭
+     */
+    public interface EntityManagerCallback<R> {
+        R doInEntityManager(EntityManager em);
+    }
+}
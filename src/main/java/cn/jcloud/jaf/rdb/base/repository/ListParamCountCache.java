@@ -0,0 +1,127 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.query.Condition;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ListParam总数缓存，以查询形态及参数值为key，过期时间为{@link #getTtlMillis()}
+ */
+public class ListParamCountCache {
+
+    public static final long DEFAULT_TTL_MILLIS = 60 * 1000L;
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final ConcurrentMap<String, Entry> totals = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private volatile long ttlMillis = DEFAULT_TTL_MILLIS;
+
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    static String key(String shapeKey, List<Condition> conditions) {
+        StringBuilder sb = new StringBuilder(shapeKey);
+        for (int i = 0, size = conditions.size(); i < size; i++) {
+            Object value = conditions.get(i).getValue();
+            sb.append('|');
+            if (value != null && value.getClass().isArray()) {
+                //数组的toString为标识哈希，按元素展开
+                for (Object element : InParameters.toList(value)) {
+                    appendValue(sb.append(','), element);
+                }
+            } else {
+                appendValue(sb, value);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendValue(StringBuilder sb, Object value) {
+        //Date的toString只精确到秒
+        sb.append(value instanceof Date ? ((Date) value).getTime() : value);
+    }
+
+    /**
+     * @return 未过期的缓存总数，不存在时返回null
+     */
+    public Long get(String key) {
+        Entry entry = totals.get(key);
+        if (entry == null || entry.expireAt < System.currentTimeMillis()) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.total;
+    }
+
+    public void put(String key, long total) {
+        if (totals.size() >= maxSize) {
+            evictExpired();
+            if (totals.size() >= maxSize) {
+                return;
+            }
+        }
+        totals.put(key, new Entry(total, System.currentTimeMillis() + ttlMillis));
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Entry>> it = totals.entrySet().iterator(); it.hasNext(); ) {
+            if (it.next().getValue().expireAt < now) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        totals.clear();
+    }
+
+    public int size() {
+        return totals.size();
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static final class Entry {
+        final long total;
+        final long expireAt;
+
+        Entry(long total, long expireAt) {
+            this.total = total;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,631 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.base.domain.BaseDomain;
+import cn.jcloud.jaf.common.query.Condition;
+import cn.jcloud.jaf.rdb.json.JsonPaths;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ListParam索引建议
+ * 开启后记录各实体实际出现的查询形态(条件字段/操作符、排序)及次数，每种形态保留首次出现时的条件值作为样本。
+ * 生成报告时按出现次数对前{@link #getMaxExplains()}种形态以样本值执行EXPLAIN，对全表扫描或filesort的形态
+ * 按"等值条件、排序字段、范围条件"的顺序建议组合索引并生成DDL：
+ * 1.长度超过{@link #MAX_INDEX_PREFIX_LENGTH}的varchar及text列使用前缀索引(utf8mb4下InnoDB单列索引上限767字节)
+ * 2.JSON路径条件建议添加虚拟生成列，表达式与方言注册的JSON函数一致，优化器可将条件匹配到生成列上的索引
+ * 3.已有索引以建议的列为最左前缀时视为已覆盖，不再生成DDL
+ * 报告可直接序列化为json供管理接口输出；DDL仅作建议，不会自动执行。
+ */
+public class ListParamIndexAdvisor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListParamIndexAdvisor.class);
+
+    public static final int DEFAULT_MAX_SHAPES = 512;
+
+    public static final int DEFAULT_MAX_EXPLAINS = 50;
+
+    public static final int MAX_INDEX_PREFIX_LENGTH = 191;
+
+    /*
+     * MySQL单个索引最多16列，标识符最长64字符
+     */
+    private static final int MAX_INDEX_COLUMNS = 16;
+
+    private static final int MAX_IDENTIFIER_LENGTH = 64;
+
+    /*
+     * IN条件样本值最多保留的个数
+     */
+    private static final int MAX_SAMPLE_VALUES = 16;
+
+    private static final String COUNT_KIND = "count";
+
+    private final ConcurrentMap<String, Shape> shapes = new ConcurrentHashMap<>();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean enabled;
+
+    private volatile int maxShapes = DEFAULT_MAX_SHAPES;
+
+    private volatile int maxExplains = DEFAULT_MAX_EXPLAINS;
+
+    private volatile JdbcTemplate jdbcTemplate;
+
+    /**
+     * 记录一次查询形态，未开启时直接返回
+     *
+     * @param key   查询形态key，见{@link ListParamQueryCache#key}
+     * @param limit 查询条数，count查询传0
+     */
+    void record(EntityManager em, String key, Class<?> domainType, List<Condition> conditions, Sort sort,
+                int limit) {
+        if (!enabled) {
+            return;
+        }
+        Shape shape = shapes.get(key);
+        if (shape == null) {
+            if (shapes.size() >= maxShapes) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            Shape created = createShape(em, key, domainType, conditions, sort, limit);
+            shape = shapes.putIfAbsent(key, created);
+            if (shape == null) {
+                shape = created;
+            }
+        }
+        shape.count.incrementAndGet();
+    }
+
+    private static Shape createShape(EntityManager em, String key, Class<?> domainType,
+                                     List<Condition> conditions, Sort sort, int limit) {
+        Shape shape = new Shape(key, domainType, key.startsWith(COUNT_KIND + "|"), limit);
+        ClassMetadata metadata = em.unwrap(Session.class).getSessionFactory().getClassMetadata(domainType);
+        if (!(metadata instanceof AbstractEntityPersister)) {
+            shape.unsupported = "非单表实体";
+            return shape;
+        }
+        AbstractEntityPersister persister = (AbstractEntityPersister) metadata;
+        shape.table = unquote(persister.getTableName());
+        for (Condition condition : conditions) {
+            Term term = createTerm(persister, condition.getField(), PredicateOperator.of(condition),
+                    condition.getValueType(), condition.getValue());
+            if (term == null) {
+                shape.unsupported = "无法解析条件字段" + condition.getField();
+                return shape;
+            }
+            shape.terms.add(term);
+        }
+        if (sort != null) {
+            for (Sort.Order order : sort) {
+                Term term = createTerm(persister, order.getProperty(), null, null, null);
+                if (term == null || term.generated != null) {
+                    shape.unsupported = "无法解析排序字段" + order.getProperty();
+                    return shape;
+                }
+                term.ascending = order.isAscending();
+                shape.orders.add(term);
+            }
+        }
+        return shape;
+    }
+
+    /*
+     * 解析字段对应的列，JSON路径字段解析为JSON函数表达式及对应的生成列，无法解析时返回null
+     */
+    private static Term createTerm(AbstractEntityPersister persister, String field, PredicateOperator operator,
+                                   Class<?> valueType, Object value) {
+        Term term = new Term(operator);
+        try {
+            int dot = field.indexOf('.');
+            String property = dot > 0 ? field.substring(0, dot) : field;
+            if (dot > 0 && JsonPaths.isJsonType(persister.getPropertyType(property).getReturnedClass())) {
+                String[] columns = persister.getPropertyColumnNames(property);
+                if (columns.length != 1) {
+                    return null;
+                }
+                Class<?> sqlType = JsonPaths.sqlType(valueType);
+                String path = JsonPaths.toJsonPath(field.substring(dot + 1));
+                term.expression = JsonPaths.template(sqlType)
+                        .replace("?1", quote(unquote(columns[0])))
+                        .replace("?2", "'" + path.replace("'", "''") + "'");
+                term.column = generatedColumnName(unquote(columns[0]), path);
+                term.generated = sqlType == Long.class ? "BIGINT"
+                        : sqlType == String.class ? "VARCHAR(" + MAX_INDEX_PREFIX_LENGTH + ")" : "DECIMAL(65, 30)";
+            } else {
+                String[] columns = persister.getPropertyColumnNames(field);
+                if (columns.length != 1) {
+                    return null;
+                }
+                term.column = unquote(columns[0]);
+                term.expression = quote(term.column);
+            }
+        } catch (HibernateException e) {
+            return null;
+        }
+        if (operator != null) {
+            term.sample = sampleValues(operator, value);
+        }
+        return term;
+    }
+
+    private static List<Object> sampleValues(PredicateOperator operator, Object value) {
+        switch (operator) {
+            case IS_NULL:
+            case IS_NOT_NULL:
+            case NONE:
+            case ALL:
+                return Collections.emptyList();
+            case IN:
+            case NOT_IN:
+            case BETWEEN:
+                List<Object> values = new ArrayList<>();
+                for (Object element : InParameters.toList(value)) {
+                    if (values.size() >= MAX_SAMPLE_VALUES) {
+                        break;
+                    }
+                    values.add(sampleValue(element));
+                }
+                return values;
+            default:
+                return Collections.singletonList(sampleValue(value));
+        }
+    }
+
+    /*
+     * 样本值仅用于EXPLAIN，转为JDBC可直接绑定的类型，实体以id代替，不持有实体引用
+     */
+    private static Object sampleValue(Object value) {
+        if (value == null || value instanceof Number || value instanceof String || value instanceof Date
+                || value instanceof Boolean) {
+            return value;
+        }
+        if (value instanceof BaseDomain) {
+            return ((BaseDomain<?>) value).getId();
+        }
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        return String.valueOf(value);
+    }
+
+    private static String generatedColumnName(String column, String path) {
+        StringBuilder sb = new StringBuilder(column);
+        for (char c : path.substring(1).toCharArray()) {
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.charAt(sb.length() - 1) != '_') {
+                sb.append('_');
+            }
+        }
+        if (sb.charAt(sb.length() - 1) == '_') {
+            sb.setLength(sb.length() - 1);
+        }
+        return truncate(sb.toString());
+    }
+
+    /**
+     * 生成报告，对出现次数最多的形态执行EXPLAIN并给出索引建议
+     */
+    public Map<String, Object> report() {
+        List<Shape> sorted = new ArrayList<>(shapes.values());
+        Collections.sort(sorted, new Comparator<Shape>() {
+            @Override
+            public int compare(Shape o1, Shape o2) {
+                long c1 = o1.count.get();
+                long c2 = o2.count.get();
+                return c1 < c2 ? 1 : (c1 == c2 ? 0 : -1);
+            }
+        });
+        JdbcTemplate template = jdbcTemplate;
+        Map<String, TableInfo> tables = new HashMap<>();
+        List<Map<String, Object>> advices = new ArrayList<>();
+        Set<String> ddl = new LinkedHashSet<>();
+        for (int i = 0, size = Math.min(sorted.size(), maxExplains); i < size; i++) {
+            Map<String, Object> advice = analyze(template, tables, sorted.get(i));
+            if (advice.get("ddl") != null) {
+                ddl.add((String) advice.get("ddl"));
+            }
+            advices.add(advice);
+        }
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("enabled", enabled);
+        report.put("shapes", shapes.size());
+        report.put("dropped", droppedCount.get());
+        report.put("explained", advices.size());
+        report.put("advices", advices);
+        report.put("ddl", new ArrayList<>(ddl));
+        return report;
+    }
+
+    private Map<String, Object> analyze(JdbcTemplate template, Map<String, TableInfo> tables, Shape shape) {
+        Map<String, Object> advice = new LinkedHashMap<>();
+        advice.put("entity", shape.domainType.getSimpleName());
+        advice.put("shape", shape.key);
+        advice.put("count", shape.count.get());
+        if (shape.unsupported != null) {
+            advice.put("error", shape.unsupported);
+            return advice;
+        }
+        if (template == null) {
+            advice.put("error", "未设置JdbcTemplate");
+            return advice;
+        }
+        List<Object> args = new ArrayList<>();
+        String sql = explainSql(shape, args);
+        advice.put("sql", sql);
+        List<Map<String, Object>> plan;
+        TableInfo table;
+        try {
+            plan = template.queryForList("EXPLAIN " + sql, args.toArray());
+            table = tables.get(shape.table);
+            if (table == null) {
+                table = loadTable(template, shape.table);
+                tables.put(shape.table, table);
+            }
+        } catch (DataAccessException e) {
+            LOG.warn("索引建议EXPLAIN失败 {}", sql, e);
+            advice.put("error", String.valueOf(e.getMostSpecificCause().getMessage()));
+            return advice;
+        }
+        boolean fullScan = false;
+        boolean filesort = false;
+        for (Map<String, Object> row : plan) {
+            fullScan |= "ALL".equals(row.get("type"));
+            Object extra = row.get("Extra");
+            filesort |= extra != null && String.valueOf(extra).contains("Using filesort");
+        }
+        advice.put("plan", plan);
+        advice.put("fullScan", fullScan);
+        advice.put("filesort", filesort);
+        if (!fullScan && !filesort) {
+            return advice;
+        }
+        List<Term> indexTerms = indexTerms(shape);
+        if (indexTerms.isEmpty()) {
+            return advice;
+        }
+        List<String> columns = new ArrayList<>(indexTerms.size());
+        for (Term term : indexTerms) {
+            columns.add(term.column);
+        }
+        advice.put("columns", columns);
+        String covering = table.covering(columns);
+        if (covering != null) {
+            //已有索引未被使用，多为样本数据量小或选择性差，由使用方结合实际数据判断
+            advice.put("coveredBy", covering);
+            return advice;
+        }
+        advice.put("ddl", indexDdl(shape.table, indexTerms, table));
+        return advice;
+    }
+
+    private static String explainSql(Shape shape, List<Object> args) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(shape.countQuery ? "SELECT COUNT(*) FROM " : "SELECT * FROM ").append(quoteTable(shape.table));
+        for (int i = 0, size = shape.terms.size(); i < size; i++) {
+            Term term = shape.terms.get(i);
+            sb.append(i == 0 ? " WHERE " : " AND ");
+            appendPredicate(sb, term);
+            args.addAll(term.sample);
+        }
+        if (!shape.countQuery && !shape.orders.isEmpty()) {
+            sb.append(" ORDER BY ");
+            for (int i = 0, size = shape.orders.size(); i < size; i++) {
+                Term term = shape.orders.get(i);
+                sb.append(i == 0 ? "" : ", ").append(term.expression).append(term.ascending ? " ASC" : " DESC");
+            }
+        }
+        if (!shape.countQuery && shape.limit > 0) {
+            sb.append(" LIMIT ").append(shape.limit);
+        }
+        return sb.toString();
+    }
+
+    private static void appendPredicate(StringBuilder sb, Term term) {
+        switch (term.operator) {
+            case EQ:
+                sb.append(term.expression).append(" = ?");
+                break;
+            case NE:
+                sb.append(term.expression).append(" <> ?");
+                break;
+            case GT:
+                sb.append(term.expression).append(" > ?");
+                break;
+            case GE:
+                sb.append(term.expression).append(" >= ?");
+                break;
+            case LT:
+                sb.append(term.expression).append(" < ?");
+                break;
+            case LE:
+                sb.append(term.expression).append(" <= ?");
+                break;
+            case LIKE:
+                sb.append(term.expression).append(" LIKE ?");
+                break;
+            case IN:
+            case NOT_IN:
+                sb.append(term.expression).append(term.operator == PredicateOperator.IN ? " IN (" : " NOT IN (");
+                for (int i = 0, size = term.sample.size(); i < size; i++) {
+                    sb.append(i == 0 ? "?" : ", ?");
+                }
+                sb.append(')');
+                break;
+            case BETWEEN:
+                sb.append(term.expression).append(" BETWEEN ? AND ?");
+                break;
+            case IS_NULL:
+                sb.append(term.expression).append(" IS NULL");
+                break;
+            case IS_NOT_NULL:
+                sb.append(term.expression).append(" IS NOT NULL");
+                break;
+            case NONE:
+                sb.append("1 = 0");
+                break;
+            default:
+                sb.append("1 = 1");
+                break;
+        }
+    }
+
+    /*
+     * 组合索引列：等值条件(=、IS NULL、IN)在前，其后为排序字段，最后为一个范围条件；
+     * 排序方向不一致时索引无法用于排序(MySQL 5.7不支持降序索引)，不加入排序字段。
+     * 不等、NOT IN、IS NOT NULL及前缀为通配符的LIKE无法使用索引，忽略。
+     */
+    private static List<Term> indexTerms(Shape shape) {
+        List<Term> equalities = new ArrayList<>();
+        List<Term> ins = new ArrayList<>();
+        Term range = null;
+        for (Term term : shape.terms) {
+            switch (term.operator) {
+                case EQ:
+                case IS_NULL:
+                    equalities.add(term);
+                    break;
+                case IN:
+                    ins.add(term);
+                    break;
+                case GT:
+                case GE:
+                case LT:
+                case LE:
+                case BETWEEN:
+                    range = range == null ? term : range;
+                    break;
+                case LIKE:
+                    Object pattern = term.sample.get(0);
+                    if (range == null && pattern instanceof String && !((String) pattern).isEmpty()
+                            && ((String) pattern).charAt(0) != '%' && ((String) pattern).charAt(0) != '_') {
+                        range = term;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        equalities.addAll(ins);
+        if (!shape.countQuery && !shape.orders.isEmpty()) {
+            boolean ascending = shape.orders.get(0).ascending;
+            boolean sameDirection = true;
+            for (Term order : shape.orders) {
+                sameDirection &= order.ascending == ascending;
+            }
+            if (sameDirection) {
+                equalities.addAll(shape.orders);
+            }
+        }
+        if (range != null) {
+            equalities.add(range);
+        }
+        Map<String, Term> distinct = new LinkedHashMap<>();
+        for (Term term : equalities) {
+            if (distinct.size() >= MAX_INDEX_COLUMNS) {
+                break;
+            }
+            if (!distinct.containsKey(term.column)) {
+                distinct.put(term.column, term);
+            }
+        }
+        return new ArrayList<>(distinct.values());
+    }
+
+    private static String indexDdl(String table, List<Term> terms, TableInfo tableInfo) {
+        StringBuilder name = new StringBuilder("idx");
+        StringBuilder columns = new StringBuilder();
+        StringBuilder sb = new StringBuilder("ALTER TABLE ").append(quoteTable(table));
+        for (Term term : terms) {
+            name.append('_').append(term.column);
+            columns.append(columns.length() == 0 ? "" : ", ").append(quote(term.column));
+            if (term.generated != null) {
+                if (!tableInfo.columns.containsKey(term.column.toLowerCase(Locale.ENGLISH))) {
+                    sb.append(" ADD COLUMN ").append(quote(term.column)).append(' ').append(term.generated)
+                            .append(" GENERATED ALWAYS AS (").append(term.expression).append(") VIRTUAL,");
+                }
+            } else if (tableInfo.needsPrefix(term.column)) {
+                columns.append('(').append(MAX_INDEX_PREFIX_LENGTH).append(')');
+            }
+        }
+        return sb.append(" ADD INDEX ").append(quote(truncate(name.toString())))
+                .append(" (").append(columns).append(')').toString();
+    }
+
+    private static TableInfo loadTable(JdbcTemplate template, String table) {
+        TableInfo info = new TableInfo();
+        String current = null;
+        List<String> indexColumns = null;
+        for (Map<String, Object> row : template.queryForList("SHOW INDEX FROM " + quoteTable(table))) {
+            String keyName = String.valueOf(row.get("Key_name"));
+            if (!keyName.equals(current)) {
+                current = keyName;
+                indexColumns = new ArrayList<>();
+                info.indexes.put(keyName, indexColumns);
+            }
+            indexColumns.add(String.valueOf(row.get("Column_name")));
+        }
+        int dot = table.lastIndexOf('.');
+        String sql = "SELECT COLUMN_NAME, DATA_TYPE, CHARACTER_MAXIMUM_LENGTH FROM information_schema.COLUMNS"
+                + " WHERE TABLE_SCHEMA = " + (dot < 0 ? "DATABASE()" : "?") + " AND TABLE_NAME = ?";
+        Object[] args = dot < 0 ? new Object[]{table}
+                : new Object[]{table.substring(0, dot), table.substring(dot + 1)};
+        for (Map<String, Object> row : template.queryForList(sql, args)) {
+            String dataType = String.valueOf(row.get("DATA_TYPE")).toLowerCase(Locale.ENGLISH);
+            Object length = row.get("CHARACTER_MAXIMUM_LENGTH");
+            boolean prefix = dataType.endsWith("text") || dataType.endsWith("blob")
+                    || (length instanceof Number && ((Number) length).longValue() > MAX_INDEX_PREFIX_LENGTH);
+            info.columns.put(String.valueOf(row.get("COLUMN_NAME")).toLowerCase(Locale.ENGLISH), prefix);
+        }
+        return info;
+    }
+
+    private static String unquote(String name) {
+        return name.replace("`", "");
+    }
+
+    private static String quote(String name) {
+        return "`" + name + "`";
+    }
+
+    private static String quoteTable(String table) {
+        int dot = table.lastIndexOf('.');
+        return dot < 0 ? quote(table) : quote(table.substring(0, dot)) + "." + quote(table.substring(dot + 1));
+    }
+
+    private static String truncate(String identifier) {
+        return identifier.length() <= MAX_IDENTIFIER_LENGTH ? identifier
+                : identifier.substring(0, MAX_IDENTIFIER_LENGTH);
+    }
+
+    /**
+     * 清空已记录的查询形态
+     */
+    public void clear() {
+        shapes.clear();
+        droppedCount.set(0);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxShapes() {
+        return maxShapes;
+    }
+
+    public void setMaxShapes(int maxShapes) {
+        this.maxShapes = maxShapes;
+    }
+
+    public int getMaxExplains() {
+        return maxExplains;
+    }
+
+    /**
+     * @param maxExplains 每次生成报告时执行EXPLAIN的形态数上限
+     */
+    public void setMaxExplains(int maxExplains) {
+        this.maxExplains = maxExplains;
+    }
+
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    private static final class Shape {
+        final String key;
+        final Class<?> domainType;
+        final boolean countQuery;
+        final int limit;
+        final List<Term> terms = new ArrayList<>();
+        final List<Term> orders = new ArrayList<>();
+        final AtomicLong count = new AtomicLong();
+        String table;
+        String unsupported;
+
+        Shape(String key, Class<?> domainType, boolean countQuery, int limit) {
+            this.key = key;
+            this.domainType = domainType;
+            this.countQuery = countQuery;
+            this.limit = limit;
+        }
+    }
+
+    private static final class Term {
+        final PredicateOperator operator;
+        String column;
+        String expression;
+        /*
+         * JSON路径对应生成列的类型，普通列为null
+         */
+        String generated;
+        List<Object> sample = Collections.emptyList();
+        boolean ascending;
+
+        Term(PredicateOperator operator) {
+            this.operator = operator;
+        }
+    }
+
+    private static final class TableInfo {
+        final Map<String, List<String>> indexes = new LinkedHashMap<>();
+        /*
+         * 小写列名 -> 是否需要前缀索引
+         */
+        final Map<String, Boolean> columns = new HashMap<>();
+
+        boolean needsPrefix(String column) {
+            return Boolean.TRUE.equals(columns.get(column.toLowerCase(Locale.ENGLISH)));
+        }
+
+        /*
+         * 以指定列为最左前缀的已有索引名，没有时返回null
+         */
+        String covering(List<String> indexColumns) {
+            for (Map.Entry<String, List<String>> index : indexes.entrySet()) {
+                List<String> existing = index.getValue();
+                if (existing.size() < indexColumns.size()) {
+                    continue;
+                }
+                boolean match = true;
+                for (int i = 0; i < indexColumns.size() && match; i++) {
+                    match = existing.get(i).equalsIgnoreCase(indexColumns.get(i));
+                }
+                if (match) {
+                    return index.getKey();
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -6,16 +6,46 @@ import cn.jcloud.jaf.common.exception.JafI18NException;
 import cn.jcloud.jaf.common.query.Condition;
 import cn.jcloud.jaf.common.query.Items;
 import cn.jcloud.jaf.common.query.ListParam;
-import cn.jcloud.jaf.common.util.ReflectUtil;
+import cn.jcloud.jaf.rdb.json.JsonPaths;
+import cn.jcloud.jaf.rdb.metrics.RDBMetrics;
+import cn.jcloud.jaf.rdb.shard.ShardRouter;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Parameter;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
-import java.io.Serializable;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 与ListParam相关的Jpa查询工具类
@@ -23,48 +53,583 @@ import java.util.List;
  */
 public class ListParamJpaUtil {
 
+    private static final String KEYSET_PARAMETER_PREFIX = "keyset";
+
+    private static final String JSON_PATH_SUFFIX = "_path";
+
+    private static final ListParamQueryCache QUERY_CACHE = new ListParamQueryCache();
+
+    private static final ListParamCountCache COUNT_CACHE = new ListParamCountCache();
+
+    private static final ListParamAsyncExecutor ASYNC_EXECUTOR = new ListParamAsyncExecutor();
+
+    private static final ListParamIndexAdvisor INDEX_ADVISOR = new ListParamIndexAdvisor();
+
+    private static final RDBMetrics METRICS = RDBMetrics.getInstance();
+
+    private static final ConversionService CONVERSION_SERVICE = new DefaultConversionService();
+
     private ListParamJpaUtil() {
     }
 
     public static <T> Items<T> list(EntityManager em, ListParam<T> listParam, Class<T> domainType) {
-        List<T> list = queryList(em, listParam, domainType);
+        long start = System.nanoTime();
+        try {
+            //内部查询不单独计量，避免与list重复计数
+            List<T> list = doQueryList(em, listParam, domainType, listParam.getOffset(), listParam.getLimit());
+            if (!listParam.isCount()) {
+                return Items.of(list);
+            }
+            Long count = getPageTotal(listParam.getOffset(), listParam.getLimit(), list);
+            return Items.of(list, count != null ? count : doGetCount(em, listParam, domainType));
+        } finally {
+            record(domainType, "list", start, listParam);
+        }
+    }
+
+    /**
+     * 异步列表查询，列表与总数两条语句在{@link ListParamAsyncExecutor}中以各自的连接并行执行。
+     * 不参与调用方事务，看不到调用方未提交的修改；两条语句在不同连接上执行，并发写入时列表与总数可能不一致。
+     * 当前页不足一页时以当前页推算的总数为准。分片实体在分片线程池中跨分片查询，不占用{@link ListParamAsyncExecutor}的并发数。
+     */
+    public static <T> ListenableFuture<Items<T>> listAsync(final EntityManagerFactory emf, final ListParam<T> listParam,
+                                                           final Class<T> domainType) {
+        if (ShardRouter.getInstance().isSharded(domainType)) {
+            //各分片查询直接提交到分片线程池，不占用异步执行器的并发数
+            return ShardedListQuery.listAsync(emf, listParam, domainType);
+        }
+        final SettableListenableFuture<Items<T>> result = new SettableListenableFuture<>();
+        final ListenableFuture<List<T>> listFuture = ASYNC_EXECUTOR.submit(emf,
+                new ListParamAsyncExecutor.EntityManagerCallback<List<T>>() {
+                    @Override
+                    public List<T> doInEntityManager(EntityManager em) {
+                        return queryList(em, listParam, domainType);
+                    }
+                });
+        if (!listParam.isCount()) {
+            listFuture.addCallback(new ListenableFutureCallback<List<T>>() {
+                @Override
+                public void onSuccess(List<T> list) {
+                    result.set(Items.of(list));
+                }
+
+                @Override
+                public void onFailure(Throwable ex) {
+                    result.setException(ex);
+                }
+            });
+            return result;
+        }
+        final ListenableFuture<Long> countFuture = ASYNC_EXECUTOR.submit(emf,
+                new ListParamAsyncExecutor.EntityManagerCallback<Long>() {
+                    @Override
+                    public Long doInEntityManager(EntityManager em) {
+                        return getCount(em, listParam, domainType);
+                    }
+                });
+        ListenableFutureCallback<Object> join = new ListenableFutureCallback<Object>() {
+            private final AtomicInteger pending = new AtomicInteger(2);
+
+            @Override
+            public void onSuccess(Object value) {
+                if (pending.decrementAndGet() != 0) {
+                    return;
+                }
+                try {
+                    List<T> list = listFuture.get();
+                    Long count = getPageTotal(listParam.getOffset(), listParam.getLimit(), list);
+                    result.set(Items.of(list, count != null ? count : countFuture.get()));
+                } catch (InterruptedException | ExecutionException e) {
+                    //两者均已完成，不会发生
+                    result.setException(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                if (result.setException(ex)) {
+                    listFuture.cancel(true);
+                    countFuture.cancel(true);
+                }
+            }
+        };
+        listFuture.addCallback(join);
+        countFuture.addCallback(join);
+        return result;
+    }
+
+    /**
+     * 字段投影查询，仅查询指定字段，结果不进入持久化上下文
+     *
+     * @param fields 查询字段，结果Map以字段名为key，按字段顺序排列；单值关联字段取关联实体的id，不支持集合关联
+     */
+    public static <T> Items<Map<String, Object>> listFields(EntityManager em, ListParam<T> listParam,
+                                                          Class<T> domainType, String... fields) {
+        String key = ListParamQueryCache.key("fields:" + StringUtils.arrayToCommaDelimitedString(fields),
+                domainType, listParam.getConditions(), listParam.getSort());
+        Query query = QUERY_CACHE.createQuery(em, key);
+        if (query == null) {
+            CriteriaBuilder builder = em.getCriteriaBuilder();
+            CriteriaQuery<Object[]> criteriaQuery = builder.createQuery(Object[].class);
+            Root<T> root = criteriaQuery.from(domainType);
+            criteriaQuery.multiselect(buildSelections(root, fields));
+            buildPredicates(builder, criteriaQuery, root, listParam.getConditions());
+            buildOrders(builder, criteriaQuery, root, listParam.getSort());
+            query = em.createQuery(criteriaQuery);
+            QUERY_CACHE.put(key, query);
+        }
+        buildParameter(em, listParam.getConditions(), query);
+        query.setFirstResult(listParam.getOffset());
+        query.setMaxResults(listParam.getLimit());
+        List<?> rows = query.getResultList();
+        List<Map<String, Object>> list = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            //单字段投影时hibernate直接返回字段值
+            Object[] values = row instanceof Object[] ? (Object[]) row : new Object[]{row};
+            Map<String, Object> item = new LinkedHashMap<>(fields.length * 2);
+            for (int i = 0; i < fields.length; i++) {
+                item.put(fields[i], values[i]);
+            }
+            list.add(item);
+        }
+        return toItems(em, listParam, domainType, list);
+    }
+
+    /**
+     * DTO投影查询，以指定字段依次作为构造参数构造结果，结果不进入持久化上下文
+     *
+     * @param resultType 结果类型，须有与字段类型顺序一致的公共构造函数
+     * @param fields     查询字段，单值关联字段取关联实体的id，不支持集合关联
+     */
+    public static <T, D> Items<D> listFields(EntityManager em, ListParam<T> listParam, Class<T> domainType,
+                                             Class<D> resultType, String... fields) {
+        String key = ListParamQueryCache.key("new:" + resultType.getName() + ":"
+                        + StringUtils.arrayToCommaDelimitedString(fields),
+                domainType, listParam.getConditions(), listParam.getSort());
+        TypedQuery<D> query = QUERY_CACHE.createQuery(em, key, resultType);
+        if (query == null) {
+            CriteriaBuilder builder = em.getCriteriaBuilder();
+            CriteriaQuery<D> criteriaQuery = builder.createQuery(resultType);
+            Root<T> root = criteriaQuery.from(domainType);
+            List<Selection<?>> selections = buildSelections(root, fields);
+            criteriaQuery.select(builder.construct(resultType,
+                    selections.toArray(new Selection<?>[selections.size()])));
+            buildPredicates(builder, criteriaQuery, root, listParam.getConditions());
+            buildOrders(builder, criteriaQuery, root, listParam.getSort());
+            query = em.createQuery(criteriaQuery);
+            QUERY_CACHE.put(key, query);
+        }
+        buildParameter(em, listParam.getConditions(), query);
+        query.setFirstResult(listParam.getOffset());
+        query.setMaxResults(listParam.getLimit());
+        return toItems(em, listParam, domainType, query.getResultList());
+    }
+
+    private static <T> List<Selection<?>> buildSelections(Root<T> root, String[] fields) {
+        if (fields.length == 0) {
+            throw JafI18NException.of("投影查询字段不能为空", ErrorCode.INVALID_QUERY);
+        }
+        List<Selection<?>> selections = new ArrayList<>(fields.length);
+        for (String field : fields) {
+            Attribute<? super T, ?> attribute = getAttribute(root, field);
+            if (attribute.isCollection()) {
+                throw JafI18NException.of("投影查询不支持集合关联字段：" + field, ErrorCode.INVALID_QUERY);
+            }
+            if (attribute.isAssociation()) {
+                //单值关联投影为关联实体的id，避免隐式连接及返回托管实体
+                EntityType<?> target = (EntityType<?>) ((SingularAttribute<?, ?>) attribute).getType();
+                selections.add(root.get(field).get(getIdName(target)));
+            } else {
+                selections.add(root.get(field));
+            }
+        }
+        return selections;
+    }
+
+    private static <T> Attribute<? super T, ?> getAttribute(Root<T> root, String field) {
+        try {
+            return root.getModel().getAttribute(field);
+        } catch (IllegalArgumentException e) {
+            throw JafI18NException.of("投影查询字段不存在：" + field, ErrorCode.INVALID_QUERY, e);
+        }
+    }
+
+    private static <X> String getIdName(EntityType<X> type) {
+        return type.getId(type.getIdType().getJavaType()).getName();
+    }
+
+    private static <T, R> Items<R> toItems(EntityManager em, ListParam<T> listParam, Class<T> domainType,
+                                           List<R> list) {
         if (!listParam.isCount()) {
             return Items.of(list);
         }
-        long count = getCount(em, listParam, domainType);
+        Long count = getPageTotal(listParam.getOffset(), listParam.getLimit(), list);
+        if (count == null) {
+            count = getCount(em, listParam, domainType);
+        }
         return Items.of(list, count);
     }
 
+    /**
+     * 按指定方式统计总数的列表查询
+     */
+    public static <T> ListResult<T> list(EntityManager em, ListParam<T> listParam, Class<T> domainType,
+                                         CountMode countMode) {
+        long start = System.nanoTime();
+        try {
+            return doList(em, listParam, domainType, countMode);
+        } finally {
+            record(domainType, "list", start, listParam);
+        }
+    }
+
+    private static <T> ListResult<T> doList(EntityManager em, ListParam<T> listParam, Class<T> domainType,
+                                            CountMode countMode) {
+        List<T> list = doQueryList(em, listParam, domainType, listParam.getOffset(), listParam.getLimit());
+        if (!listParam.isCount()) {
+            return new ListResult<>(Items.of(list), true);
+        }
+        Long count = getPageTotal(listParam.getOffset(), listParam.getLimit(), list);
+        if (count != null) {
+            return new ListResult<>(Items.of(list, count), true);
+        }
+        List<Condition> conditions = listParam.getConditions();
+        if (countMode == CountMode.CACHED) {
+            String key = ListParamCountCache.key(
+                    ListParamQueryCache.key("count", domainType, conditions, null), conditions);
+            count = COUNT_CACHE.get(key);
+            if (count != null) {
+                return new ListResult<>(Items.of(list, count), false);
+            }
+            count = doGetCount(em, listParam, domainType);
+            COUNT_CACHE.put(key, count);
+            return new ListResult<>(Items.of(list, count), true);
+        }
+        if (countMode == CountMode.ESTIMATED && conditions.isEmpty()) {
+            count = estimateCount(em, domainType);
+            if (count != null) {
+                return new ListResult<>(Items.of(list, count), false);
+            }
+        }
+        return new ListResult<>(Items.of(list, doGetCount(em, listParam, domainType)), true);
+    }
+
+    /*
+     * 当前页不足一页且非越界空页时，总数即为offset加当前页条数，无需count查询
+     */
+    private static Long getPageTotal(int offset, int limit, List<?> list) {
+        if (list.size() < limit && (!list.isEmpty() || offset == 0)) {
+            return (long) offset + list.size();
+        }
+        return null;
+    }
+
+    /*
+     * 从information_schema读取InnoDB统计的表行数，无法获取时返回null
+     */
+    private static Long estimateCount(EntityManager em, Class<?> domainType) {
+        ClassMetadata metadata = em.unwrap(Session.class).getSessionFactory().getClassMetadata(domainType);
+        if (!(metadata instanceof AbstractEntityPersister)) {
+            return null;
+        }
+        String tableName = ((AbstractEntityPersister) metadata).getTableName();
+        tableName = tableName.substring(tableName.lastIndexOf('.') + 1).replace("`", "");
+        try {
+            Object rows = em.createNativeQuery("SELECT TABLE_ROWS FROM information_schema.TABLES"
+                    + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?1")
+                    .setParameter(1, tableName)
+                    .getSingleResult();
+            return rows == null ? null : ((Number) rows).longValue();
+        } catch (PersistenceException e) {
+            return null;
+        }
+    }
+
     public static <T> List<T> queryList(EntityManager em, ListParam<T> listParam,
                                         Class<T> domainType) {
-        CriteriaBuilder builder = em.getCriteriaBuilder();
-        CriteriaQuery<T> criteriaQuery = builder.createQuery(domainType);
-        Root<T> root = criteriaQuery.from(domainType);
-        criteriaQuery.select(root);
-        buildPredicates(builder, criteriaQuery, root, listParam.getConditions());
-        buildOrders(builder, criteriaQuery, root, listParam.getSort());
-        Query query = em.createQuery(criteriaQuery);
-        buildParameter(listParam.getConditions(), query);
+        return queryList(em, listParam, domainType, listParam.getOffset(), listParam.getLimit());
+    }
+
+    /**
+     * 按指定范围查询，忽略ListParam中的offset与limit
+     */
+    public static <T> List<T> queryList(EntityManager em, ListParam<T> listParam,
+                                        Class<T> domainType, int firstResult, int maxResults) {
+        long start = System.nanoTime();
+        try {
+            return doQueryList(em, listParam, domainType, firstResult, maxResults);
+        } finally {
+            record(domainType, "queryList", start, listParam);
+        }
+    }
+
+    private static <T> List<T> doQueryList(EntityManager em, ListParam<T> listParam,
+                                           Class<T> domainType, int firstResult, int maxResults) {
+        TypedQuery<T> query = createListQuery(em, listParam, domainType);
+        query.setFirstResult(firstResult);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    /**
+     * 流式查询，使用MySQL服务端流式读取(fetchSize = Integer.MIN_VALUE)，结果只读。
+     * 须在事务内调用并在事务结束前关闭迭代器；迭代期间该连接不能执行其它语句。
+     *
+     * @param detach 是否逐行将已读实体移出持久化上下文；未级联DETACH的EAGER关联实体不会被移出，
+     *               含此类关联时内存占用仍随行数增长
+     */
+    public static <T> CloseableIterator<T> stream(EntityManager em, ListParam<T> listParam,
+                                                  Class<T> domainType, boolean detach) {
+        TypedQuery<T> query = createListQuery(em, listParam, domainType);
         query.setFirstResult(listParam.getOffset());
         query.setMaxResults(listParam.getLimit());
-        return query.getResultList();
+        org.hibernate.Query hibernateQuery = query.unwrap(org.hibernate.Query.class);
+        hibernateQuery.setFetchSize(Integer.MIN_VALUE);
+        hibernateQuery.setReadOnly(true);
+        ScrollableResults results = hibernateQuery.scroll(ScrollMode.FORWARD_ONLY);
+        return new ScrollableResultsIterator<>(results, detach ? em.unwrap(Session.class) : null);
+    }
+
+    private static <T> TypedQuery<T> createListQuery(EntityManager em, ListParam<T> listParam,
+                                                     Class<T> domainType) {
+        String key = ListParamQueryCache.key("list", domainType, listParam.getConditions(), listParam.getSort());
+        TypedQuery<T> query = QUERY_CACHE.createQuery(em, key, domainType);
+        if (query == null) {
+            CriteriaBuilder builder = em.getCriteriaBuilder();
+            CriteriaQuery<T> criteriaQuery = builder.createQuery(domainType);
+            Root<T> root = criteriaQuery.from(domainType);
+            criteriaQuery.select(root);
+            buildPredicates(builder, criteriaQuery, root, listParam.getConditions());
+            buildOrders(builder, criteriaQuery, root, listParam.getSort());
+            query = em.createQuery(criteriaQuery);
+            QUERY_CACHE.put(key, query);
+        }
+        buildParameter(em, listParam.getConditions(), query);
+        setCacheable(em, domainType, query);
+        INDEX_ADVISOR.record(em, key, domainType, listParam.getConditions(), listParam.getSort(),
+                listParam.getLimit());
+        return query;
+    }
+
+    /*
+     * 以实体是否配置了二级缓存为准，包括@Cacheable标注及按实体配置的缓存区域
+     */
+    private static void setCacheable(EntityManager em, Class<?> domainType, Query query) {
+        if (!Boolean.parseBoolean(String.valueOf(
+                em.getEntityManagerFactory().getProperties().get(AvailableSettings.USE_QUERY_CACHE)))) {
+            return;
+        }
+        ClassMetadata metadata = em.unwrap(Session.class).getSessionFactory().getClassMetadata(domainType);
+        if (metadata instanceof EntityPersister && ((EntityPersister) metadata).hasCache()) {
+            query.setHint(QueryHints.HINT_CACHEABLE, true);
+        }
+    }
+
+    /**
+     * 游标(keyset)分页查询
+     * 排序字段末尾自动追加id作为唯一性兜底，游标中记录上一页最后一行的排序字段值，
+     * 下一页以排序字段构造的范围条件定位，而非offset扫描。排序字段须为基本类型字段，
+     * 可为空值，空值按MySQL的规则视为最小值；游标只能用于相同排序的查询。
+     */
+    public static <T> KeysetPage<T> seek(EntityManager em, ListParam<T> listParam, Class<T> domainType,
+                                         String cursor) {
+        EntityType<T> entityType = em.getMetamodel().entity(domainType);
+        Sort sort = keysetSort(entityType, listParam.getSort());
+        List<Sort.Order> sortOrders = new ArrayList<>();
+        for (Sort.Order sortOrder : sort) {
+            sortOrders.add(sortOrder);
+        }
+        boolean seeking = cursor != null && !cursor.isEmpty();
+        Object[] keys = null;
+        StringBuilder kind = new StringBuilder(seeking ? "seek" : "list");
+        if (seeking) {
+            Class<?>[] keyTypes = new Class<?>[sortOrders.size()];
+            for (int i = 0; i < keyTypes.length; i++) {
+                keyTypes[i] = entityType.getAttribute(sortOrders.get(i).getProperty()).getJavaType();
+            }
+            keys = KeysetCursor.decode(cursor, sort, keyTypes);
+            //空值与非空值对应的范围条件不同
+            kind.append(':');
+            for (Object k : keys) {
+                kind.append(k == null ? '0' : '1');
+            }
+        }
+
+        String key = ListParamQueryCache.key(kind.toString(), domainType, listParam.getConditions(), sort);
+        TypedQuery<T> query = QUERY_CACHE.createQuery(em, key, domainType);
+        if (query == null) {
+            CriteriaBuilder builder = em.getCriteriaBuilder();
+            CriteriaQuery<T> criteriaQuery = builder.createQuery(domainType);
+            Root<T> root = criteriaQuery.from(domainType);
+            criteriaQuery.select(root);
+            List<Predicate> predicates = toPredicates(builder, root, listParam.getConditions());
+            if (seeking) {
+                predicates.add(buildKeysetPredicate(builder, root, sortOrders, keys));
+            }
+            if (!predicates.isEmpty()) {
+                Predicate[] predicateArr = new Predicate[predicates.size()];
+                predicates.toArray(predicateArr);
+                criteriaQuery.where(builder.and(predicateArr));
+            }
+            buildOrders(builder, criteriaQuery, root, sort);
+            query = em.createQuery(criteriaQuery);
+            QUERY_CACHE.put(key, query);
+        }
+        buildParameter(em, listParam.getConditions(), query);
+        INDEX_ADVISOR.record(em, key, domainType, listParam.getConditions(), sort, listParam.getLimit());
+        if (seeking) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    query.setParameter(KEYSET_PARAMETER_PREFIX + i, keys[i]);
+                }
+            }
+        }
+        query.setMaxResults(listParam.getLimit());
+        List<T> list = query.getResultList();
+
+        String nextCursor = null;
+        if (!list.isEmpty() && list.size() >= listParam.getLimit()) {
+            BeanWrapper last = new BeanWrapperImpl(list.get(list.size() - 1));
+            Object[] lastKeys = new Object[sortOrders.size()];
+            for (int i = 0; i < lastKeys.length; i++) {
+                lastKeys[i] = last.getPropertyValue(sortOrders.get(i).getProperty());
+            }
+            nextCursor = KeysetCursor.encode(sort, lastKeys);
+        }
+        if (!listParam.isCount()) {
+            return new KeysetPage<>(Items.of(list), nextCursor);
+        }
+        Long count = seeking ? null : getPageTotal(0, listParam.getLimit(), list);
+        if (count == null) {
+            count = getCount(em, listParam, domainType);
+        }
+        return new KeysetPage<>(Items.of(list, count), nextCursor);
+    }
+
+    private static <T> Sort keysetSort(EntityType<T> entityType, Sort sort) {
+        String idName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+        Sort idSort = new Sort(Sort.Direction.ASC, idName);
+        if (sort == null) {
+            return idSort;
+        }
+        return sort.getOrderFor(idName) == null ? sort.and(idSort) : sort;
+    }
+
+    /*
+     * (k1 > ?) or (k1 = ? and k2 > ?) or ...，降序字段使用 <
+     * MySQL中空值最小：升序时空值之后为非空值，降序时非空值之后为空值；游标值为空时以IS NULL代替等值比较
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Predicate buildKeysetPredicate(CriteriaBuilder builder, Root<T> root,
+                                                      List<Sort.Order> sortOrders, Object[] keys) {
+        int size = sortOrders.size();
+        Path[] paths = new Path[size];
+        ParameterExpression[] parameters = new ParameterExpression[size];
+        for (int i = 0; i < size; i++) {
+            paths[i] = root.get(sortOrders.get(i).getProperty());
+            if (keys[i] != null) {
+                parameters[i] = builder.parameter(paths[i].getJavaType(), KEYSET_PARAMETER_PREFIX + i);
+            }
+        }
+        List<Predicate> alternatives = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            boolean ascending = Sort.Direction.ASC.equals(sortOrders.get(i).getDirection());
+            Predicate after;
+            if (parameters[i] == null) {
+                if (!ascending) {
+                    //降序时空值排在最后，其后没有更多行
+                    continue;
+                }
+                after = builder.isNotNull(paths[i]);
+            } else if (ascending) {
+                after = builder.greaterThan(paths[i], parameters[i]);
+            } else {
+                after = builder.or(builder.lessThan(paths[i], parameters[i]), builder.isNull(paths[i]));
+            }
+            Predicate[] terms = new Predicate[i + 1];
+            for (int j = 0; j < i; j++) {
+                terms[j] = parameters[j] == null ? builder.isNull(paths[j]) : builder.equal(paths[j], parameters[j]);
+            }
+            terms[i] = after;
+            alternatives.add(builder.and(terms));
+        }
+        if (alternatives.isEmpty()) {
+            return builder.disjunction();
+        }
+        return builder.or(alternatives.toArray(new Predicate[alternatives.size()]));
     }
 
     public static <T> Long getCount(EntityManager em, ListParam<T> listParam, Class<T> domainType) {
-        CriteriaBuilder builder = em.getCriteriaBuilder();
-        CriteriaQuery<Long> criteriaQuery = builder
-                .createQuery(Long.class);
-        Root<T> root = criteriaQuery.from(domainType);
-        criteriaQuery.select(builder.count(root));
+        long start = System.nanoTime();
+        try {
+            return doGetCount(em, listParam, domainType);
+        } finally {
+            long elapsed = METRICS.recordOperation(domainType, "getCount", start);
+            if (METRICS.isSlow(elapsed)) {
+                METRICS.slowQuery(domainType, "getCount", elapsed,
+                        ListParamQueryCache.key("count", domainType, listParam.getConditions(), null));
+            }
+        }
+    }
 
-        //设置查询条件
+    private static <T> Long doGetCount(EntityManager em, ListParam<T> listParam, Class<T> domainType) {
         List<Condition> conditions = listParam.getConditions();
-        buildPredicates(builder, criteriaQuery, root, conditions);
+        String key = ListParamQueryCache.key("count", domainType, conditions, null);
+        TypedQuery<Long> query = QUERY_CACHE.createQuery(em, key, Long.class);
+        if (query == null) {
+            CriteriaBuilder builder = em.getCriteriaBuilder();
+            CriteriaQuery<Long> criteriaQuery = builder
+                    .createQuery(Long.class);
+            Root<T> root = criteriaQuery.from(domainType);
+            criteriaQuery.select(builder.count(root));
+
+            //设置查询条件
+            buildPredicates(builder, criteriaQuery, root, conditions);
+            query = em.createQuery(criteriaQuery);
+            QUERY_CACHE.put(key, query);
+        }
 
         //设置查询参数
-        Query query = em.createQuery(criteriaQuery);
-        buildParameter(conditions, query);
-        return (Long) query.getSingleResult();
+        buildParameter(em, conditions, query);
+        setCacheable(em, domainType, query);
+        INDEX_ADVISOR.record(em, key, domainType, conditions, null, 0);
+        return query.getSingleResult();
+    }
+
+    private static void record(Class<?> domainType, String operation, long startNanos, ListParam<?> listParam) {
+        long elapsed = METRICS.recordOperation(domainType, operation, startNanos);
+        if (METRICS.isSlow(elapsed)) {
+            METRICS.slowQuery(domainType, operation, elapsed,
+                    ListParamQueryCache.key(operation, domainType, listParam.getConditions(), listParam.getSort()));
+        }
+    }
+
+    /**
+     * 查询语句缓存，可用于调整容量及查看命中情况
+     */
+    public static ListParamQueryCache getQueryCache() {
+        return QUERY_CACHE;
+    }
+
+    /**
+     * 异步查询执行器，用于调整并发数
+     */
+    public static ListParamAsyncExecutor getAsyncExecutor() {
+        return ASYNC_EXECUTOR;
+    }
+
+    /**
+     * 索引建议，用于开启查询形态记录及生成报告
+     */
+    public static ListParamIndexAdvisor getIndexAdvisor() {
+        return INDEX_ADVISOR;
+    }
+
+    /**
+     * 总数缓存，用于{@link CountMode#CACHED}
+     */
+    public static ListParamCountCache getCountCache() {
+        return COUNT_CACHE;
     }
 
     private static <T, R> void buildOrders(CriteriaBuilder builder, CriteriaQuery<R> criteriaQuery, Root<T> root, Sort sort) {
@@ -91,95 +656,239 @@ public class ListParamJpaUtil {
         if (conditions.isEmpty()) {
             return;
         }
-        List<Predicate> predicates = new ArrayList<>(conditions.size());
+        List<Predicate> predicates = toPredicates(builder, root, conditions);
+        Predicate[] predicateArr = new Predicate[predicates.size()];
+        predicates.toArray(predicateArr);
+        criteriaQuery.where(builder.and(predicateArr));
+    }
+
+    private static <T> List<Predicate> toPredicates(CriteriaBuilder builder, Root<T> root,
+                                                    List<Condition> conditions) {
+        List<Predicate> predicates = new ArrayList<>(conditions.size() + 1);
         for (int i = 0, size = conditions.size(); i < size; i++) {
             Condition condition = conditions.get(i);
             predicates.add(buildPredicate(builder, root, condition, i));
         }
-        Predicate[] predicateArr = new Predicate[predicates.size()];
-        predicates.toArray(predicateArr);
-        criteriaQuery.where(builder.and(predicateArr));
+        return predicates;
     }
 
     public static void buildParameter(List<Condition> conditions, Query query) {
+        buildParameter(null, conditions, query);
+    }
+
+    /**
+     * 设置查询参数，BaseDomain类型的值通过em以引用方式绑定
+     */
+    public static void buildParameter(EntityManager em, List<Condition> conditions, Query query) {
         for (int i = 0, size = conditions.size(); i < size; i++) {
             Condition condition = conditions.get(i);
+            String field = condition.getField();
+            String parameterName = parameterName(field, i);
             Object value = condition.getValue();
             Class valueType = condition.getValueType();
-            value = getRealTypeValue(value, valueType);
-            query.setParameter(condition.getField() + i, value);
+            Class<?> jsonType = null;
+            if (field.indexOf('.') > 0 && hasParameter(query, parameterName + JSON_PATH_SUFFIX)) {
+                query.setParameter(parameterName + JSON_PATH_SUFFIX,
+                        JsonPaths.toJsonPath(field.substring(field.indexOf('.') + 1)));
+                jsonType = JsonPaths.sqlType(valueType);
+            }
+            switch (PredicateOperator.of(condition)) {
+                case IS_NULL:
+                case IS_NOT_NULL:
+                case NONE:
+                case ALL:
+                    break;
+                case IN:
+                case NOT_IN:
+                    List<Object> values = getRealTypeValues(em, value, valueType);
+                    if (jsonType != null) {
+                        values = JsonPaths.convertAll(values, jsonType);
+                    }
+                    for (int c = 0, chunks = InParameters.chunkCount(values.size()); c < chunks; c++) {
+                        query.setParameter(parameterName + "_" + c, InParameters.chunk(values, c));
+                    }
+                    break;
+                case BETWEEN:
+                    List<Object> bounds = getRealTypeValues(em, value, valueType);
+                    if (jsonType != null) {
+                        bounds = JsonPaths.convertAll(bounds, jsonType);
+                    }
+                    if (bounds.size() != 2) {
+                        throw JafI18NException.of("BETWEEN条件须包含上下界两个值", ErrorCode.INVALID_QUERY);
+                    }
+                    query.setParameter(parameterName + "_from", bounds.get(0));
+                    query.setParameter(parameterName + "_to", bounds.get(1));
+                    break;
+                default:
+                    Object realValue = getRealTypeValue(em, value, valueType);
+                    query.setParameter(parameterName,
+                            jsonType != null ? JsonPaths.convert(realValue, jsonType) : realValue);
+                    break;
+            }
         }
     }
 
-    private static Object getRealTypeValue(Object value, Class valueType) {
-        if (BaseDomain.class.isAssignableFrom(valueType)) {
-            try {
-                BaseDomain domain = (BaseDomain) valueType.newInstance();
-                if (Long.class.equals(ReflectUtil.getGenericParameter(valueType)[0])) {
-                    domain.setId(Long.parseLong(String.valueOf(value)));
-                } else {
-                    domain.setId((Serializable) value);
-                }
-                return domain;
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw JafI18NException.of("无法实例类型" + valueType.getCanonicalName()
-                        + ",可能由于缺少无参构造函数", ErrorCode.INVALID_ARGUMENT, e);
+    /*
+     * 参数名须为合法标识符，路径字段中的"."替换为"_"
+     */
+    private static String parameterName(String field, int index) {
+        return field.replace('.', '_') + index;
+    }
+
+    private static boolean hasParameter(Query query, String name) {
+        for (Parameter<?> parameter : query.getParameters()) {
+            if (name.equals(parameter.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * 条件字段对应的表达式：字段形如"JSON属性.路径"时为JSON_EXTRACT，形如"关联.属性"时逐级导航
+     */
+    private static <T> Expression<?> fieldExpression(CriteriaBuilder builder, Root<T> root, String field,
+                                                     String parameterName, Class<?> jsonType) {
+        int dot = field.indexOf('.');
+        if (dot < 0) {
+            return root.get(field);
+        }
+        Path<?> path = root.get(field.substring(0, dot));
+        if (jsonType != null) {
+            return builder.function(JsonPaths.functionName(jsonType), jsonType, path,
+                    builder.parameter(String.class, parameterName + JSON_PATH_SUFFIX));
+        }
+        for (String name : field.substring(dot + 1).split("\\.")) {
+            path = path.get(name);
+        }
+        return path;
+    }
+
+    private static <T> boolean isJsonPath(Root<T> root, String field) {
+        int dot = field.indexOf('.');
+        return dot > 0 && JsonPaths.isJsonType(root.get(field.substring(0, dot)).getJavaType());
+    }
+
+    private static List<Object> getRealTypeValues(EntityManager em, Object value, Class valueType) {
+        List<Object> values = InParameters.toList(value);
+        boolean convert = value instanceof String && !String.class.equals(valueType)
+                && !BaseDomain.class.isAssignableFrom(valueType);
+        for (int i = 0, size = values.size(); i < size; i++) {
+            Object element = values.get(i);
+            if (convert) {
+                element = CONVERSION_SERVICE.convert(element, valueType);
             }
+            values.set(i, getRealTypeValue(em, element, valueType));
+        }
+        return values;
+    }
+
+    private static Object getRealTypeValue(EntityManager em, Object value, Class valueType) {
+        if (BaseDomain.class.isAssignableFrom(valueType)) {
+            return DomainReferenceConverter.of(valueType).convert(em, value);
         }
         return value;
     }
 
     private static <T> Predicate buildPredicate(CriteriaBuilder builder, Root<T> root, Condition condition, int index) {
         String field = condition.getField();
-        String parameterName = field + index;
+        String parameterName = parameterName(field, index);
         Class valueType = condition.getValueType();
+        Class<?> jsonType = null;
+        if (isJsonPath(root, field)) {
+            jsonType = JsonPaths.sqlType(valueType);
+            valueType = jsonType;
+        }
+        Expression path = fieldExpression(builder, root, field, parameterName, jsonType);
         Predicate predicate;
-        switch (condition.getOperator()) {
+        switch (PredicateOperator.of(condition)) {
             case EQ:
                 predicate = builder.equal(
-                        root.get(field),
+                        path,
                         builder.parameter(valueType, parameterName)
                 );
                 break;
             case NE:
                 predicate = builder.notEqual(
-                        root.get(field),
+                        path,
                         builder.parameter(valueType, parameterName)
                 );
                 break;
             case GT:
                 predicate = builder.greaterThan(
-                        root.get(field).as(valueType),
+                        path.as(valueType),
                         builder.parameter(valueType, parameterName)
                 );
                 break;
             case GE:
                 predicate = builder.greaterThanOrEqualTo(
-                        root.get(field).as(valueType),
+                        path.as(valueType),
                         builder.parameter(valueType, parameterName)
                 );
                 break;
             case LT:
                 predicate = builder.lessThan(
-                        root.get(field).as(valueType),
+                        path.as(valueType),
                         builder.parameter(valueType, parameterName)
                 );
                 break;
             case LE:
                 predicate = builder.lessThanOrEqualTo(
-                        root.get(field).as(valueType),
+                        path.as(valueType),
                         builder.parameter(valueType, parameterName)
                 );
                 break;
             case LIKE:
                 predicate = builder.like(
-                        root.get(field).as(String.class),
+                        path.as(String.class),
                         builder.parameter(String.class, parameterName)
                 );
                 break;
+            case IN:
+                predicate = buildInPredicate(builder, path, parameterName,
+                        InParameters.chunkCount(InParameters.size(condition.getValue())));
+                break;
+            case NOT_IN:
+                predicate = builder.not(buildInPredicate(builder, path, parameterName,
+                        InParameters.chunkCount(InParameters.size(condition.getValue()))));
+                break;
+            case BETWEEN:
+                predicate = builder.between(
+                        path.as(valueType),
+                        builder.parameter(valueType, parameterName + "_from"),
+                        builder.parameter(valueType, parameterName + "_to")
+                );
+                break;
+            case IS_NULL:
+                predicate = builder.isNull(path);
+                break;
+            case IS_NOT_NULL:
+                predicate = builder.isNotNull(path);
+                break;
+            case NONE:
+                predicate = builder.disjunction();
+                break;
+            case ALL:
+                predicate = builder.conjunction();
+                break;
             default:
                 throw JafI18NException.of("非法或不支持的操作符", ErrorCode.INVALID_QUERY);
         }
         return predicate;
     }
+
+    /*
+     * 按批拆分为多个IN，以OR连接
+     */
+    @SuppressWarnings("unchecked")
+    private static Predicate buildInPredicate(CriteriaBuilder builder, Expression<?> path, String parameterName,
+                                              int chunks) {
+        Predicate[] predicates = new Predicate[chunks];
+        for (int c = 0; c < chunks; c++) {
+            Expression<Collection<?>> parameter = (Expression) builder.parameter(Collection.class,
+                    parameterName + "_" + c);
+            predicates[c] = path.in(parameter);
+        }
+        return chunks == 1 ? predicates[0] : builder.or(predicates);
+    }
 }
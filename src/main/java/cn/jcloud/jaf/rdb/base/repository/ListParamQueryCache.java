@@ -0,0 +1,205 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.query.Condition;
+import org.hibernate.HibernateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Parameter;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ListParam查询语句缓存
+ * 以查询形态(实体类型、条件字段/操作符/值类型序列、排序)为key，缓存Criteria翻译后的JPQL，
+ * 命中时直接以JPQL创建查询并绑定参数，省去Criteria树构建与翻译；JPQL到SQL的翻译由hibernate自身的
+ * 查询计划缓存负责。
+ * Criteria中的字面量会被翻译为隐式绑定的参数，复用JPQL时这些参数不会被绑定，因此含已绑定参数的查询不缓存，
+ * 只缓存全部参数由{@link ListParamJpaUtil#buildParameter}绑定的查询。
+ * 容量有限，超出时从若干抽样中淘汰最久未使用的形态(近似LRU)。
+ */
+public class ListParamQueryCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ListParamQueryCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 512;
+
+    /*
+     * 淘汰时抽样的条目数
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+
+    private final ConcurrentMap<String, Statement> statements = new ConcurrentHashMap<>();
+
+    /**
+     * 生成查询形态key
+     *
+     * @param kind       查询种类，如list、count
+     * @param domainType 实体类型
+     * @param conditions 查询条件
+     * @param sort       排序，可为null
+     * @return 查询形态key
+     */
+    public static String key(String kind, Class<?> domainType, List<Condition> conditions, Sort sort) {
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(kind).append('|').append(domainType.getName());
+        for (int i = 0, size = conditions.size(); i < size; i++) {
+            Condition condition = conditions.get(i);
+            PredicateOperator operator = PredicateOperator.of(condition);
+            sb.append('|').append(condition.getField())
+                    .append(',').append(operator)
+                    .append(',').append(condition.getValueType().getName());
+            if (operator == PredicateOperator.IN || operator == PredicateOperator.NOT_IN) {
+                //IN按批拆分，批数不同语句不同
+                sb.append(',').append(InParameters.chunkCount(InParameters.size(condition.getValue())));
+            }
+        }
+        if (sort != null) {
+            sb.append('#');
+            for (Sort.Order order : sort) {
+                sb.append(order.getProperty()).append(',').append(order.getDirection()).append(';');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 按查询形态创建查询，未命中时返回null，由调用方构建Criteria后调用{@link #put(String, Query)}
+     */
+    public <R> TypedQuery<R> createQuery(EntityManager em, String key, Class<R> resultType) {
+        String jpql = get(key);
+        return jpql == null ? null : em.createQuery(jpql, resultType);
+    }
+
+    /**
+     * 按查询形态创建无类型查询，用于结果为多列的投影查询，未命中时返回null
+     */
+    public Query createQuery(EntityManager em, String key) {
+        String jpql = get(key);
+        return jpql == null ? null : em.createQuery(jpql);
+    }
+
+    private String get(String key) {
+        Statement statement = statements.get(key);
+        if (statement == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        statement.lastAccess = clock.incrementAndGet();
+        hitCount.incrementAndGet();
+        return statement.jpql;
+    }
+
+    /**
+     * 缓存查询语句，须在绑定参数之前调用
+     */
+    public void put(String key, Query query) {
+        if (maxSize <= 0) {
+            return;
+        }
+        String jpql;
+        try {
+            //getParameters()只包含Criteria中显式声明的参数，JPQL中其余的命名参数为字面量翻译出的隐式参数
+            Set<String> explicit = new HashSet<>();
+            for (Parameter<?> parameter : query.getParameters()) {
+                explicit.add(parameter.getName());
+            }
+            org.hibernate.Query hibernateQuery = query.unwrap(org.hibernate.Query.class);
+            for (String name : hibernateQuery.getNamedParameters()) {
+                if (!explicit.contains(name)) {
+                    LOG.debug("查询含隐式参数{}，不缓存该查询形态", name);
+                    return;
+                }
+            }
+            jpql = hibernateQuery.getQueryString();
+        } catch (PersistenceException | HibernateException e) {
+            LOG.debug("无法获取查询语句，不缓存该查询形态", e);
+            return;
+        }
+        statements.put(key, new Statement(jpql, clock.incrementAndGet()));
+        while (statements.size() > maxSize) {
+            evictOne();
+        }
+    }
+
+    private void evictOne() {
+        String eldestKey = null;
+        Statement eldest = null;
+        Iterator<Map.Entry<String, Statement>> it = statements.entrySet().iterator();
+        for (int i = 0; i < EVICTION_SAMPLES && it.hasNext(); i++) {
+            Map.Entry<String, Statement> entry = it.next();
+            if (eldest == null || entry.getValue().lastAccess < eldest.lastAccess) {
+                eldestKey = entry.getKey();
+                eldest = entry.getValue();
+            }
+        }
+        if (eldest != null && statements.remove(eldestKey, eldest)) {
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        statements.clear();
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 设置缓存容量，小于等于0时关闭缓存
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        if (maxSize <= 0) {
+            clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private static final class Statement {
+        final String jpql;
+        volatile long lastAccess;
+
+        Statement(String jpql, long lastAccess) {
+            this.jpql = jpql;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
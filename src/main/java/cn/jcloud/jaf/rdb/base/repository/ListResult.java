@@ -0,0 +1,29 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.query.Items;
+
+/**
+ * 带总数精确性标识的查询结果
+ */
+public class ListResult<T> {
+
+    private final Items<T> items;
+
+    /*
+     * 总数是否精确，为false时总数来自缓存或估算
+     */
+    private final boolean exactTotal;
+
+    public ListResult(Items<T> items, boolean exactTotal) {
+        this.items = items;
+        this.exactTotal = exactTotal;
+    }
+
+    public Items<T> getItems() {
+        return items;
+    }
+
+    public boolean isExactTotal() {
+        return exactTotal;
+    }
+}
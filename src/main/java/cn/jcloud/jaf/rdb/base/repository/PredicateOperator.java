@@ -0,0 +1,85 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.constant.ErrorCode;
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import cn.jcloud.jaf.common.query.Condition;
+
+import java.util.Collection;
+
+/**
+ * 条件实际使用的谓词
+ * 除Condition自身的操作符外，根据值推断扩展谓词：
+ * 1.EQ/NE的值为集合或数组时，对应IN/NOT IN，空集合分别对应恒假/恒真；byte[]、char[]为单个二进制或字符值，仍为EQ/NE
+ * 2.EQ/NE的值为null时，对应IS NULL/IS NOT NULL，匹配或排除该列为NULL的行(此前生成"= null"，不匹配任何行)
+ * 3.操作符名为IN、NOT_IN、BETWEEN、IS_NULL、IS_NOT_NULL时直接对应，BETWEEN的值为两个元素的集合或数组。
+ * 当前jaf-common的Operator仅有EQ、NE、GT、GE、LT、LE、LIKE，第3条须待其增加对应枚举值后才会生效，
+ * 在此之前IN、NOT_IN、IS_NULL、IS_NOT_NULL只能由第1、2条推断得到，BETWEEN不可用。
+ */
+enum PredicateOperator {
+    EQ, NE, GT, GE, LT, LE, LIKE, IN, NOT_IN, BETWEEN, IS_NULL, IS_NOT_NULL,
+    /**
+     * 恒假，用于空IN
+     */
+    NONE,
+    /**
+     * 恒真，用于空NOT IN
+     */
+    ALL;
+
+    static PredicateOperator of(Condition condition) {
+        Object value = condition.getValue();
+        switch (condition.getOperator()) {
+            case EQ:
+                if (value == null) {
+                    return IS_NULL;
+                }
+                return isMultiValue(value) ? in(value, IN, NONE) : EQ;
+            case NE:
+                if (value == null) {
+                    return IS_NOT_NULL;
+                }
+                return isMultiValue(value) ? in(value, NOT_IN, ALL) : NE;
+            case GT:
+                return GT;
+            case GE:
+                return GE;
+            case LT:
+                return LT;
+            case LE:
+                return LE;
+            case LIKE:
+                return LIKE;
+            default:
+                return ofName(condition.getOperator().name(), value);
+        }
+    }
+
+    /*
+     * 按名称匹配Condition操作符中尚不存在的扩展操作符，不依赖具体枚举常量以兼容新旧版本的jaf-common
+     */
+    private static PredicateOperator ofName(String name, Object value) {
+        switch (name) {
+            case "IN":
+                return in(value, IN, NONE);
+            case "NOT_IN":
+                return in(value, NOT_IN, ALL);
+            case "BETWEEN":
+                return BETWEEN;
+            case "IS_NULL":
+                return IS_NULL;
+            case "IS_NOT_NULL":
+                return IS_NOT_NULL;
+            default:
+                throw JafI18NException.of("非法或不支持的操作符", ErrorCode.INVALID_QUERY);
+        }
+    }
+
+    private static boolean isMultiValue(Object value) {
+        return value instanceof Collection
+                || value.getClass().isArray() && !(value instanceof byte[]) && !(value instanceof char[]);
+    }
+
+    private static PredicateOperator in(Object value, PredicateOperator operator, PredicateOperator empty) {
+        return InParameters.size(value) == 0 ? empty : operator;
+    }
+}
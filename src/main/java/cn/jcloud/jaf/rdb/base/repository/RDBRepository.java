@@ -0,0 +1,160 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.base.domain.BaseDomain;
+import cn.jcloud.jaf.common.base.repository.BaseRepository;
+import cn.jcloud.jaf.common.query.Items;
+import cn.jcloud.jaf.common.query.ListParam;
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 关系型数据库Dao扩展接口，业务Dao继承该接口即可使用{@link BaseRepositoryImpl}中的扩展能力
+ * 各list方法(含{@link BaseRepository}的list)中{@link ListParam}条件的取值：
+ * <ul>
+ * <li>EQ/NE的值为null时为IS NULL/IS NOT NULL，匹配或排除该列为NULL的行；此前生成"= null"，不匹配任何行；</li>
+ * <li>EQ/NE的值为集合或数组(byte[]、char[]除外)时为IN/NOT IN，空集合时分别不匹配任何行/匹配全部行。</li>
+ * </ul>
+ */
+@NoRepositoryBean
+public interface RDBRepository<T extends BaseDomain<I>, I extends Serializable> extends BaseRepository<T, I> {
+
+    /**
+     * 按主键查询
+     * 分片键不是主键的{@link cn.jcloud.jaf.rdb.shard.Sharded}实体在全部分片上并行查询，不参与调用方事务：
+     * 结果为游离态实体，修改不会被保存，延迟加载的关联不可访问；在读写事务中调用时抛出异常，
+     * 需要修改时在事务外查询后以{@code save}保存。
+     * 未分片实体及以主键分片的实体与{@link org.springframework.data.repository.CrudRepository}一致
+     */
+    T findOne(I id);
+
+    /**
+     * 是否存在，分片键不是主键的分片实体同{@link #findOne(Serializable)}，读写事务中调用时抛出异常
+     */
+    boolean exists(I id);
+
+    /**
+     * 游标(keyset)分页查询，忽略{@link ListParam#getOffset()}，以上一页返回的游标定位，
+     * 查询耗时与翻页深度无关
+     *
+     * @param listParam 查询参数
+     * @param cursor    上一页返回的游标，首页传null
+     * @return 当前页数据及下一页游标
+     */
+    KeysetPage<T> list(ListParam<T> listParam, String cursor);
+
+    /**
+     * 异步列表查询，列表与总数查询以各自的连接并行执行，耗时取两者较大值而非两者之和。
+     * <ul>
+     * <li>不参与调用方事务：在独立线程和独立EntityManager中执行，看不到调用方事务中未提交的修改，结果为游离态实体；</li>
+     * <li>只读：以只读事务标识执行，配置了从库时路由到从库，结果实体的修改不会被保存；</li>
+     * <li>一致性：两条语句不在同一快照中执行，并发写入时总数可能与列表不一致。</li>
+     * </ul>
+     *
+     * @param listParam 查询参数
+     * @return 查询结果
+     * @see ListParamAsyncExecutor
+     */
+    ListenableFuture<Items<T>> listAsync(ListParam<T> listParam);
+
+    /**
+     * 按指定方式统计总数的列表查询，结果中标识总数是否精确
+     *
+     * @param listParam 查询参数
+     * @param countMode 总数统计方式
+     * @return 查询结果
+     */
+    ListResult<T> list(ListParam<T> listParam, CountMode countMode);
+
+    /**
+     * 批量保存，每{@code flushSize}条flush并清空持久化上下文，内存占用与总条数无关。
+     * 注意：清空持久化上下文会使当前事务中已加载的其它实体变为游离态；
+     * 语句按JDBC批量执行需在配置中覆盖jdbcBatchSize开启，默认关闭时逐条执行
+     *
+     * @param entities  待保存实体
+     * @param flushSize 每批条数，建议为hibernate.jdbc.batch_size的整数倍
+     * @return 保存条数
+     */
+    <S extends T> int saveAllBatched(Iterator<S> entities, int flushSize);
+
+    /**
+     * 以默认批次大小批量保存
+     *
+     * @see #saveAllBatched(Iterator, int)
+     */
+    <S extends T> int saveAllBatched(Iterable<S> entities);
+
+    /**
+     * 流式查询，适用于大批量导出，结果只读且逐行移出持久化上下文，内存占用与总行数无关。
+     * 须在已有事务内调用，并在事务结束前关闭迭代器
+     *
+     * @param listParam 查询参数
+     * @return 流式迭代器
+     */
+    CloseableIterator<T> stream(ListParam<T> listParam);
+
+    /**
+     * 字段投影查询，仅查询指定字段，结果不进入持久化上下文
+     *
+     * @param listParam 查询参数
+     * @param fields    查询字段
+     * @return 以字段名为key的结果
+     */
+    Items<Map<String, Object>> listFields(ListParam<T> listParam, String... fields);
+
+    /**
+     * DTO投影查询，以指定字段依次作为构造参数构造结果，结果不进入持久化上下文
+     *
+     * @param listParam  查询参数
+     * @param resultType 结果类型，须有与字段类型顺序一致的公共构造函数
+     * @param fields     查询字段
+     * @return 查询结果
+     */
+    <D> Items<D> listFields(ListParam<T> listParam, Class<D> resultType, String... fields);
+
+    /**
+     * 将指定实体移出二级缓存，用于绕过持久化上下文的写入(如批量更新、原生sql)之后
+     *
+     * @param id 实体id
+     */
+    void evictCache(I id);
+
+    /**
+     * 将该类型的全部实体移出二级缓存
+     */
+    void evictCache();
+
+    /**
+     * 按id批量查询，每批至多512个id，一批一次查询，结果顺序不保证与ids一致
+     *
+     * @param ids 实体id
+     * @return 存在的实体
+     */
+    List<T> findAllByIdsBatched(Iterable<I> ids);
+
+    /**
+     * 合并写累加，适用于浏览数等高频计数：不加载实体，增量在内存中合并后定期批量写入，
+     * 写入前查询读到的是旧值；在事务中调用时于提交后生效
+     *
+     * @param id    实体id
+     * @param field 整数字段
+     * @param delta 增量，可为负数
+     * @see WriteBehindBuffer
+     */
+    void incrementLater(I id, String field, long delta);
+
+    /**
+     * 合并写赋值，适用于最后访问时间、状态等高频覆盖写：同一字段以最后一次赋值为准，定期批量写入
+     *
+     * @param id    实体id
+     * @param field 字段，须为单列的基本属性，不支持枚举、AttributeConverter及自定义类型
+     * @param value 值，以JDBC参数直接绑定；整数字段须为整数或null
+     * @see WriteBehindBuffer
+     */
+    void setLater(I id, String field, Object value);
+}
@@ -0,0 +1,84 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.data.util.CloseableIterator;
+
+import java.util.NoSuchElementException;
+
+/**
+ * 基于ScrollableResults的流式迭代器
+ * 指定session时，每取下一行即将上一行实体从持久化上下文中移除。
+ * 移除只级联到配置了CascadeType.DETACH(或ALL)的关联，随行加载的其它EAGER关联实体仍留在持久化上下文中，
+ * 此类实体须自行evict或在迭代结束后clear；不在迭代中途clear，以免丢弃调用方尚未flush的修改
+ * (流式读取期间连接被占用，无法先flush)。
+ */
+class ScrollableResultsIterator<T> implements CloseableIterator<T> {
+
+    private final ScrollableResults results;
+
+    private final Session session;
+
+    private boolean fetched;
+
+    private boolean hasNextRow;
+
+    private boolean closed;
+
+    private Object previous;
+
+    ScrollableResultsIterator(ScrollableResults results, Session session) {
+        this.results = results;
+        this.session = session;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!fetched) {
+            detachPrevious();
+            hasNextRow = results.next();
+            fetched = true;
+            if (!hasNextRow) {
+                close();
+            }
+        }
+        return hasNextRow;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        Object row = results.get(0);
+        previous = row;
+        return (T) row;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        detachPrevious();
+        results.close();
+    }
+
+    private void detachPrevious() {
+        if (session != null && previous != null) {
+            session.evict(previous);
+        }
+        previous = null;
+    }
+}
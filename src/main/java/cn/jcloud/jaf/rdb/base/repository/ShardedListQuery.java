@@ -0,0 +1,247 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.constant.ErrorCode;
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import cn.jcloud.jaf.common.query.Items;
+import cn.jcloud.jaf.common.query.ListParam;
+import cn.jcloud.jaf.rdb.shard.ShardRouter;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.domain.Sort;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分片实体的跨分片查询
+ * 每个分片在独立线程中以独立的EntityManager查询，结果为游离态实体，不参与调用方事务。
+ * 列表查询各分片取前offset+limit条，按排序归并后再截取offset与limit，总数为各分片总数之和；
+ * 翻页越深各分片读取越多，深分页应使用游标分页。
+ */
+final class ShardedListQuery {
+
+    private ShardedListQuery() {
+    }
+
+    static <T> Items<T> list(EntityManagerFactory emf, ListParam<T> listParam, Class<T> domainType) {
+        return combine(ShardRouter.getInstance().fanOut(pageQuery(emf, listParam, domainType)), listParam);
+    }
+
+    /**
+     * 异步跨分片列表查询，各分片查询直接提交到分片线程池，全部完成后在最后完成的分片线程中归并
+     */
+    static <T> ListenableFuture<Items<T>> listAsync(EntityManagerFactory emf, final ListParam<T> listParam,
+                                                    Class<T> domainType) {
+        final SettableListenableFuture<Items<T>> result = new SettableListenableFuture<>();
+        ShardRouter.getInstance().fanOutAsync(pageQuery(emf, listParam, domainType)).addCallback(
+                new ListenableFutureCallback<List<ShardPage<T>>>() {
+                    @Override
+                    public void onSuccess(List<ShardPage<T>> pages) {
+                        try {
+                            result.set(combine(pages, listParam));
+                        } catch (RuntimeException e) {
+                            result.setException(e);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable ex) {
+                        result.setException(ex);
+                    }
+                });
+        return result;
+    }
+
+    private static <T> ShardRouter.ShardCallback<ShardPage<T>> pageQuery(final EntityManagerFactory emf,
+                                                                          final ListParam<T> listParam,
+                                                                          final Class<T> domainType) {
+        final int window = (int) Math.min((long) listParam.getOffset() + listParam.getLimit(), Integer.MAX_VALUE);
+        return new ShardRouter.ShardCallback<ShardPage<T>>() {
+            @Override
+            public ShardPage<T> doInShard(int shard) {
+                EntityManager em = emf.createEntityManager();
+                try {
+                    List<T> list = ListParamJpaUtil.queryList(em, listParam, domainType, 0, window);
+                    Long count = null;
+                    if (listParam.isCount()) {
+                        count = list.size() < window
+                                ? (long) list.size() : ListParamJpaUtil.getCount(em, listParam, domainType);
+                    }
+                    return new ShardPage<>(list, count);
+                } finally {
+                    em.close();
+                }
+            }
+        };
+    }
+
+    private static <T> Items<T> combine(List<ShardPage<T>> pages, ListParam<T> listParam) {
+        List<List<T>> shardItems = new ArrayList<>(pages.size());
+        for (ShardPage<T> page : pages) {
+            shardItems.add(page.items);
+        }
+        List<T> merged = merge(shardItems, listParam.getSort(), listParam.getOffset(), listParam.getLimit());
+        if (!listParam.isCount()) {
+            return Items.of(merged);
+        }
+        long total = 0;
+        for (ShardPage<T> page : pages) {
+            total += page.count;
+        }
+        return Items.of(merged, total);
+    }
+
+    /**
+     * 在全部分片上按主键查询，用于分片键不是主键的实体
+     */
+    static <T> T find(final EntityManagerFactory emf, final Class<T> domainType, final Object id) {
+        List<T> found = ShardRouter.getInstance().fanOut(new ShardRouter.ShardCallback<T>() {
+            @Override
+            public T doInShard(int shard) {
+                EntityManager em = emf.createEntityManager();
+                try {
+                    return em.find(domainType, id);
+                } finally {
+                    em.close();
+                }
+            }
+        });
+        for (T entity : found) {
+            if (entity != null) {
+                return entity;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 归并各分片已按sort排序的结果，跳过前offset条后取limit条
+     */
+    static <T> List<T> merge(List<List<T>> shardItems, Sort sort, int offset, int limit) {
+        Comparator<Object> comparator = new SortComparator(sort);
+        int[] positions = new int[shardItems.size()];
+        List<T> result = new ArrayList<>(Math.min(limit, 1024));
+        int skipped = 0;
+        while (result.size() < limit) {
+            int selected = -1;
+            T head = null;
+            for (int i = 0; i < shardItems.size(); i++) {
+                List<T> items = shardItems.get(i);
+                if (positions[i] >= items.size()) {
+                    continue;
+                }
+                T candidate = items.get(positions[i]);
+                if (selected < 0 || comparator.compare(candidate, head) < 0) {
+                    selected = i;
+                    head = candidate;
+                }
+            }
+            if (selected < 0) {
+                break;
+            }
+            positions[selected]++;
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(head);
+            }
+        }
+        return result;
+    }
+
+    private static final class ShardPage<T> {
+        private final List<T> items;
+        private final Long count;
+
+        private ShardPage(List<T> items, Long count) {
+            this.items = items;
+            this.count = count;
+        }
+    }
+
+    /**
+     * 与MySQL排序一致：升序时null在前，降序时null在后；未指定排序时保持分片顺序
+     * 每个排序属性按实体类型解析一次getter并缓存，比较时直接反射读取，仅在单次归并内使用
+     */
+    private static final class SortComparator implements Comparator<Object> {
+
+        private final List<Sort.Order> orders = new ArrayList<>();
+
+        private final List<String[]> paths = new ArrayList<>();
+
+        private final Map<Class<?>, Map<String, Method>> getters = new HashMap<>();
+
+        private SortComparator(Sort sort) {
+            if (sort == null) {
+                return;
+            }
+            for (Sort.Order order : sort) {
+                orders.add(order);
+                paths.add(StringUtils.delimitedListToStringArray(order.getProperty(), "."));
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public int compare(Object left, Object right) {
+            for (int i = 0; i < orders.size(); i++) {
+                Object l = read(left, paths.get(i));
+                Object r = read(right, paths.get(i));
+                int result;
+                if (l == null || r == null) {
+                    result = l == r ? 0 : (l == null ? -1 : 1);
+                } else {
+                    result = ((Comparable<Object>) l).compareTo(r);
+                }
+                if (result != 0) {
+                    return orders.get(i).isAscending() ? result : -result;
+                }
+            }
+            return 0;
+        }
+
+        /*
+         * 嵌套路径中间值为null时按null参与排序
+         */
+        private Object read(Object bean, String[] path) {
+            Object value = bean;
+            for (String property : path) {
+                if (value == null) {
+                    return null;
+                }
+                value = ReflectionUtils.invokeMethod(getter(value.getClass(), property), value);
+            }
+            return value;
+        }
+
+        private Method getter(Class<?> type, String property) {
+            Map<String, Method> typeGetters = getters.get(type);
+            if (typeGetters == null) {
+                typeGetters = new HashMap<>();
+                getters.put(type, typeGetters);
+            }
+            Method getter = typeGetters.get(property);
+            if (getter == null) {
+                PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, property);
+                if (descriptor == null || descriptor.getReadMethod() == null) {
+                    throw JafI18NException.of("排序字段不可读", ErrorCode.INVALID_QUERY);
+                }
+                getter = descriptor.getReadMethod();
+                ReflectionUtils.makeAccessible(getter);
+                typeGetters.put(property, getter);
+            }
+            return getter;
+        }
+    }
+}
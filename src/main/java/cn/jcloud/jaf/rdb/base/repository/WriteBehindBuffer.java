@@ -0,0 +1,635 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.constant.ErrorCode;
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import cn.jcloud.jaf.rdb.shard.ShardRouter;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.CustomType;
+import org.hibernate.type.Type;
+import org.hibernate.type.descriptor.converter.AttributeConverterTypeAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并写缓冲，用于计数器、最后访问时间等高频小更新
+ * 写入按实体类型、id在分段的并发Map中合并：累加合并为一个增量，赋值以最后一次为准，赋值后的累加叠加到该值上。
+ * 仅支持直接映射为单列的基本属性，枚举、AttributeConverter及自定义类型的属性需要转换后才能绑定，不支持；
+ * 累加仅支持整数属性，整数属性的赋值须为整数或null，null上的累加结果仍为null，与SQL一致。
+ * 后台线程每{@link #getFlushIntervalMillis()}毫秒将各实体的待写数据以
+ * {@code UPDATE ... SET c = CASE id WHEN ? THEN ? ... ELSE c END WHERE id IN (...)}批量写入，每条语句至多
+ * {@link #BATCH_SIZE}个id；单个实体待写id数超过{@link #getMaxPending()}时立即触发写入。关闭时写入全部待写数据。
+ * <ul>
+ * <li>时效：写入最多延迟一个写入间隔加一次写入耗时，期间查询读到的是旧值；</li>
+ * <li>事务：在事务中调用时于事务提交后才进入缓冲，回滚则丢弃；写入使用独立连接，不参与任何事务；</li>
+ * <li>绕过持久化上下文：不加载实体，不做脏检查，不更新版本号及审计字段，记录不存在时不插入；
+ *     写入后将对应实体移出二级缓存，已加载到其它持久化上下文中的实体不会刷新；</li>
+ * <li>失败：连接中断等可重试异常时合并回缓冲等待下次写入，其它异常丢弃并记录日志；进程异常退出时未写入的数据丢失。</li>
+ * </ul>
+ */
+public final class WriteBehindBuffer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    private static final WriteBehindBuffer INSTANCE = new WriteBehindBuffer();
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000L;
+
+    public static final int DEFAULT_MAX_PENDING = 10000;
+
+    public static final int BATCH_SIZE = 500;
+
+    private static final int STRIPES = 16;
+
+    private static final Set<Class<?>> INTEGRAL_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            Long.class, Integer.class, Short.class, Byte.class));
+
+    private final ConcurrentMap<Class<?>, EntityBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private final AtomicLong flushedRows = new AtomicLong();
+
+    private final AtomicLong flushedStatements = new AtomicLong();
+
+    private final AtomicLong failedRows = new AtomicLong();
+
+    private volatile JdbcTemplate jdbcTemplate;
+
+    private volatile long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+    private volatile int maxPending = DEFAULT_MAX_PENDING;
+
+    private volatile ScheduledExecutorService scheduler;
+
+    private WriteBehindBuffer() {
+    }
+
+    public static WriteBehindBuffer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 累加整数字段
+     *
+     * @param delta 增量，可为负数
+     */
+    public void increment(EntityManagerFactory emf, Class<?> domainType, Object id, String field, long delta) {
+        write(emf, domainType, id, field, null, delta, true);
+    }
+
+    /**
+     * 赋值，同一字段多次赋值以最后一次为准
+     */
+    public void set(EntityManagerFactory emf, Class<?> domainType, Object id, String field, Object value) {
+        write(emf, domainType, id, field, value, 0L, false);
+    }
+
+    private void write(EntityManagerFactory emf, Class<?> domainType, final Object id, String field,
+                       final Object value, final long delta, final boolean increment) {
+        if (id == null) {
+            throw JafI18NException.of("合并写的id不能为空", ErrorCode.INVALID_ARGUMENT);
+        }
+        if (jdbcTemplate == null) {
+            throw JafI18NException.of("合并写未设置JdbcTemplate", ErrorCode.INVALID_ARGUMENT);
+        }
+        final EntityBuffer buffer = buffer(emf, domainType);
+        BufferedColumn bufferedColumn = buffer.column(field);
+        if (increment && !bufferedColumn.integral) {
+            throw JafI18NException.of(domainType.getSimpleName() + "." + field + "不是整数字段，不能累加",
+                    ErrorCode.INVALID_ARGUMENT);
+        }
+        if (!increment && bufferedColumn.integral && value != null && !isIntegral(value)) {
+            throw JafI18NException.of(domainType.getSimpleName() + "." + field + "的值必须为整数",
+                    ErrorCode.INVALID_ARGUMENT);
+        }
+        final String column = bufferedColumn.name;
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(buffer, id, column, value, delta, increment);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                add(buffer, id, column, value, delta, increment);
+            }
+        });
+    }
+
+    private void add(EntityBuffer buffer, Object id, String column, Object value, long delta, boolean increment) {
+        if (buffer.add(id, column, value, delta, increment) > maxPending
+                && buffer.flushRequested.compareAndSet(false, true)) {
+            schedule(buffer);
+        }
+        writeCount.incrementAndGet();
+        //已启动时不加锁，避免所有写入在单例的锁上串行
+        if (scheduler == null) {
+            ensureStarted();
+        }
+    }
+
+    private EntityBuffer buffer(EntityManagerFactory emf, Class<?> domainType) {
+        EntityBuffer buffer = buffers.get(domainType);
+        if (buffer == null) {
+            EntityBuffer created = new EntityBuffer(emf, domainType);
+            buffer = buffers.putIfAbsent(domainType, created);
+            if (buffer == null) {
+                buffer = created;
+            }
+        }
+        return buffer;
+    }
+
+    private synchronized void ensureStarted() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jaf-rdb-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long interval = Math.max(1L, flushIntervalMillis);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    LOG.error("合并写写入失败", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void schedule(final EntityBuffer buffer) {
+        if (scheduler == null) {
+            return;
+        }
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush(buffer);
+                    } catch (RuntimeException e) {
+                        LOG.error("合并写写入失败", e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //关闭中，由close写入
+            buffer.flushRequested.set(false);
+        }
+    }
+
+    /**
+     * 立即写入全部待写数据
+     */
+    public void flush() {
+        for (EntityBuffer buffer : buffers.values()) {
+            flush(buffer);
+        }
+    }
+
+    private void flush(EntityBuffer buffer) {
+        JdbcTemplate template = jdbcTemplate;
+        //同一实体串行写入，保证同一字段的先后赋值按顺序生效
+        synchronized (buffer) {
+            buffer.flushRequested.set(false);
+            List<Map.Entry<Object, Pending>> drained = buffer.drain();
+            if (drained.isEmpty()) {
+                return;
+            }
+            if (!buffer.sharded) {
+                execute(template, buffer, drained, null);
+                return;
+            }
+            ShardRouter router = ShardRouter.getInstance();
+            Map<Integer, List<Map.Entry<Object, Pending>>> byShard = new TreeMap<>();
+            for (Map.Entry<Object, Pending> entry : drained) {
+                int shard = router.shardOf(entry.getKey());
+                List<Map.Entry<Object, Pending>> entries = byShard.get(shard);
+                if (entries == null) {
+                    entries = new ArrayList<>();
+                    byShard.put(shard, entries);
+                }
+                entries.add(entry);
+            }
+            for (Map.Entry<Integer, List<Map.Entry<Object, Pending>>> shard : byShard.entrySet()) {
+                execute(template, buffer, shard.getValue(), shard.getKey());
+            }
+        }
+    }
+
+    private void execute(JdbcTemplate template, EntityBuffer buffer, List<Map.Entry<Object, Pending>> entries,
+                         Integer shard) {
+        for (int from = 0, size = entries.size(); from < size; from += BATCH_SIZE) {
+            List<Map.Entry<Object, Pending>> batch = entries.subList(from, Math.min(size, from + BATCH_SIZE));
+            List<Object> args = new ArrayList<>();
+            String sql = buffer.updateSql(batch, args);
+            ShardRouter router = ShardRouter.getInstance();
+            Integer previous = shard == null ? null : router.enter(shard);
+            try {
+                template.update(sql, args.toArray());
+                flushedStatements.incrementAndGet();
+                flushedRows.addAndGet(batch.size());
+                buffer.evict(batch);
+            } catch (TransientDataAccessException | RecoverableDataAccessException e) {
+                LOG.warn("合并写写入{}失败，{}条待下次写入", buffer.domainType.getSimpleName(), batch.size(), e);
+                for (Map.Entry<Object, Pending> entry : batch) {
+                    buffer.restore(entry.getKey(), entry.getValue());
+                }
+            } catch (DataAccessException e) {
+                LOG.error("合并写写入{}失败，丢弃{}条", buffer.domainType.getSimpleName(), batch.size(), e);
+                failedRows.addAndGet(batch.size());
+            } finally {
+                if (shard != null) {
+                    router.exit(previous);
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止后台线程并写入全部待写数据，之后再次写入时重新启动
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService service;
+        synchronized (this) {
+            service = scheduler;
+            scheduler = null;
+        }
+        if (service != null) {
+            service.shutdown();
+            try {
+                service.awaitTermination(flushIntervalMillis + 30000L, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * 待写及已写入情况快照
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> pending = new TreeMap<>();
+        for (EntityBuffer buffer : buffers.values()) {
+            pending.put(buffer.domainType.getSimpleName(), buffer.size.get());
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("pending", pending);
+        snapshot.put("writes", writeCount.get());
+        snapshot.put("flushedRows", flushedRows.get());
+        snapshot.put("flushedStatements", flushedStatements.get());
+        snapshot.put("failedRows", failedRows.get());
+        return snapshot;
+    }
+
+    public void setJdbcTemplate(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    /**
+     * 设置写入间隔，对之后启动的后台线程生效
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    /*
+     * 单个实体类型的待写数据，按id哈希分段
+     */
+    private static final class EntityBuffer {
+        final Class<?> domainType;
+        final EntityManagerFactory emf;
+        final AbstractEntityPersister persister;
+        final String table;
+        final String idColumn;
+        final boolean sharded;
+        final ConcurrentMap<String, BufferedColumn> columns = new ConcurrentHashMap<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicBoolean flushRequested = new AtomicBoolean();
+        @SuppressWarnings("unchecked")
+        final ConcurrentMap<Object, Pending>[] stripes = new ConcurrentMap[STRIPES];
+
+        EntityBuffer(EntityManagerFactory emf, Class<?> domainType) {
+            this.domainType = domainType;
+            this.emf = emf;
+            EntityManager em = emf.createEntityManager();
+            ClassMetadata metadata;
+            try {
+                metadata = em.unwrap(Session.class).getSessionFactory().getClassMetadata(domainType);
+            } finally {
+                em.close();
+            }
+            if (!(metadata instanceof AbstractEntityPersister)
+                    || ((AbstractEntityPersister) metadata).getIdentifierColumnNames().length != 1) {
+                throw JafI18NException.of(domainType.getSimpleName() + "不支持合并写", ErrorCode.INVALID_ARGUMENT);
+            }
+            this.persister = (AbstractEntityPersister) metadata;
+            this.table = quoteTable(persister.getTableName());
+            this.idColumn = quote(persister.getIdentifierColumnNames()[0]);
+            ShardRouter router = ShardRouter.getInstance();
+            this.sharded = router.isSharded(domainType);
+            if (sharded && !persister.getIdentifierPropertyName().equals(router.getShardKey(domainType))) {
+                throw JafI18NException.of("分片键不是id的分片实体" + domainType.getSimpleName() + "不支持合并写",
+                        ErrorCode.INVALID_ARGUMENT);
+            }
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new ConcurrentHashMap<>();
+            }
+        }
+
+        /*
+         * 字段对应的列，仅支持单列的基本属性；值按原样绑定，需要转换的枚举、AttributeConverter及自定义类型不支持
+         */
+        BufferedColumn column(String field) {
+            BufferedColumn column = columns.get(field);
+            if (column != null) {
+                return column;
+            }
+            String[] names;
+            Type type;
+            try {
+                names = persister.getPropertyColumnNames(field);
+                type = persister.getPropertyType(field);
+            } catch (HibernateException e) {
+                throw JafI18NException.of(domainType.getSimpleName() + "不存在字段" + field,
+                        ErrorCode.INVALID_ARGUMENT, e);
+            }
+            Class<?> javaType = type.getReturnedClass();
+            if (names.length != 1 || type.isAssociationType() || type instanceof CustomType
+                    || type instanceof AttributeConverterTypeAdapter || javaType.isEnum()) {
+                throw JafI18NException.of(domainType.getSimpleName() + "." + field + "不支持合并写",
+                        ErrorCode.INVALID_ARGUMENT);
+            }
+            column = new BufferedColumn(quote(names[0]), INTEGRAL_TYPES.contains(javaType));
+            columns.put(field, column);
+            return column;
+        }
+
+        int add(Object id, String column, Object value, long delta, boolean increment) {
+            ConcurrentMap<Object, Pending> stripe = stripe(id);
+            while (true) {
+                Pending pending = stripe.get(id);
+                if (pending == null) {
+                    Pending created = new Pending();
+                    pending = stripe.putIfAbsent(id, created);
+                    if (pending == null) {
+                        pending = created;
+                        size.incrementAndGet();
+                    }
+                }
+                synchronized (pending) {
+                    //已被取走写入，重新放入新的待写数据
+                    if (pending.drained) {
+                        continue;
+                    }
+                    if (increment) {
+                        pending.increment(column, delta);
+                    } else {
+                        pending.set(column, value);
+                    }
+                }
+                return size.get();
+            }
+        }
+
+        /*
+         * 写入失败时合并回缓冲，失败期间的新赋值优先
+         */
+        void restore(Object id, Pending failed) {
+            for (Map.Entry<String, ColumnUpdate> entry : failed.updates.entrySet()) {
+                ColumnUpdate update = entry.getValue();
+                ConcurrentMap<Object, Pending> stripe = stripe(id);
+                while (true) {
+                    Pending pending = stripe.get(id);
+                    if (pending == null) {
+                        Pending created = new Pending();
+                        pending = stripe.putIfAbsent(id, created);
+                        if (pending == null) {
+                            pending = created;
+                            size.incrementAndGet();
+                        }
+                    }
+                    synchronized (pending) {
+                        if (pending.drained) {
+                            continue;
+                        }
+                        pending.restore(entry.getKey(), update);
+                    }
+                    break;
+                }
+            }
+        }
+
+        List<Map.Entry<Object, Pending>> drain() {
+            List<Map.Entry<Object, Pending>> drained = new ArrayList<>();
+            for (ConcurrentMap<Object, Pending> stripe : stripes) {
+                for (Iterator<Map.Entry<Object, Pending>> it = stripe.entrySet().iterator(); it.hasNext(); ) {
+                    Map.Entry<Object, Pending> entry = it.next();
+                    Pending pending = entry.getValue();
+                    if (!stripe.remove(entry.getKey(), pending)) {
+                        continue;
+                    }
+                    size.decrementAndGet();
+                    synchronized (pending) {
+                        pending.drained = true;
+                    }
+                    drained.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), pending));
+                }
+            }
+            return drained;
+        }
+
+        /*
+         * UPDATE t SET c = CASE id WHEN ? THEN ? WHEN ? THEN c + ? ELSE c END, ... WHERE id IN (?, ...)
+         */
+        String updateSql(List<Map.Entry<Object, Pending>> batch, List<Object> args) {
+            Set<String> batchColumns = new LinkedHashSet<>();
+            for (Map.Entry<Object, Pending> entry : batch) {
+                batchColumns.addAll(entry.getValue().updates.keySet());
+            }
+            StringBuilder sb = new StringBuilder(64 + batch.size() * 32);
+            sb.append("UPDATE ").append(table).append(" SET ");
+            boolean first = true;
+            for (String column : batchColumns) {
+                sb.append(first ? "" : ", ").append(column).append(" = CASE ").append(idColumn);
+                first = false;
+                for (Map.Entry<Object, Pending> entry : batch) {
+                    ColumnUpdate update = entry.getValue().updates.get(column);
+                    if (update == null) {
+                        continue;
+                    }
+                    sb.append(" WHEN ? THEN ").append(update.assigned ? "?" : column + " + ?");
+                    args.add(entry.getKey());
+                    args.add(update.assigned ? update.value : update.delta);
+                }
+                sb.append(" ELSE ").append(column).append(" END");
+            }
+            sb.append(" WHERE ").append(idColumn).append(" IN (");
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                sb.append(i == 0 ? "?" : ", ?");
+                args.add(batch.get(i).getKey());
+            }
+            return sb.append(')').toString();
+        }
+
+        void evict(List<Map.Entry<Object, Pending>> batch) {
+            Cache cache = emf.getCache();
+            if (cache == null) {
+                return;
+            }
+            for (Map.Entry<Object, Pending> entry : batch) {
+                cache.evict(domainType, entry.getKey());
+            }
+        }
+
+        private ConcurrentMap<Object, Pending> stripe(Object id) {
+            return stripes[(id.hashCode() & Integer.MAX_VALUE) % STRIPES];
+        }
+    }
+
+    /*
+     * 单个id的待写数据，由自身加锁保护
+     */
+    private static final class Pending {
+        final Map<String, ColumnUpdate> updates = new LinkedHashMap<>(4);
+        boolean drained;
+
+        void increment(String column, long delta) {
+            ColumnUpdate update = updates.get(column);
+            if (update == null) {
+                updates.put(column, ColumnUpdate.delta(delta));
+                return;
+            }
+            if (!update.assigned) {
+                update.delta += delta;
+                return;
+            }
+            update.value = add(update.value, delta);
+        }
+
+        void set(String column, Object value) {
+            updates.put(column, ColumnUpdate.value(value));
+        }
+
+        void restore(String column, ColumnUpdate failed) {
+            ColumnUpdate update = updates.get(column);
+            if (update == null) {
+                updates.put(column, failed);
+            } else if (!update.assigned) {
+                //失败的赋值或增量在前，新增量叠加其上；新的赋值在后时失败的数据已被覆盖
+                if (failed.assigned) {
+                    updates.put(column, ColumnUpdate.value(add(failed.value, update.delta)));
+                } else {
+                    update.delta += failed.delta;
+                }
+            }
+        }
+
+        /*
+         * 赋值已校验为整数或null
+         */
+        private static Object add(Object value, long delta) {
+            return value == null ? null : ((Number) value).longValue() + delta;
+        }
+    }
+
+    private static final class BufferedColumn {
+        final String name;
+        final boolean integral;
+
+        private BufferedColumn(String name, boolean integral) {
+            this.name = name;
+            this.integral = integral;
+        }
+    }
+
+    private static final class ColumnUpdate {
+        final boolean assigned;
+        Object value;
+        long delta;
+
+        private ColumnUpdate(boolean assigned, Object value, long delta) {
+            this.assigned = assigned;
+            this.value = value;
+            this.delta = delta;
+        }
+
+        static ColumnUpdate value(Object value) {
+            return new ColumnUpdate(true, value, 0L);
+        }
+
+        static ColumnUpdate delta(long delta) {
+            return new ColumnUpdate(false, null, delta);
+        }
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    private static String quote(String name) {
+        return "`" + name.replace("`", "") + "`";
+    }
+
+    private static String quoteTable(String table) {
+        table = table.replace("`", "");
+        int dot = table.lastIndexOf('.');
+        return dot < 0 ? quote(table) : quote(table.substring(0, dot)) + "." + quote(table.substring(dot + 1));
+    }
+}
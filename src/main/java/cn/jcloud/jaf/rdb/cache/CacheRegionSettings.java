@@ -0,0 +1,57 @@
+package cn.jcloud.jaf.rdb.cache;
+
+/**
+ * 二级缓存区域配置
+ */
+public class CacheRegionSettings {
+
+    /*
+     * 堆内最大条数
+     */
+    private int maxEntries = 10000;
+
+    /*
+     * 存活时间，单位秒，0表示不过期
+     */
+    private long ttlSeconds = 300;
+
+    /*
+     * 堆外存储容量，如"512m"，为null时不使用堆外存储；需classpath中有BigMemory实现
+     */
+    private String offHeapSize;
+
+    public CacheRegionSettings() {
+    }
+
+    public CacheRegionSettings(int maxEntries, long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public CacheRegionSettings setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public CacheRegionSettings setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+        return this;
+    }
+
+    public String getOffHeapSize() {
+        return offHeapSize;
+    }
+
+    public CacheRegionSettings setOffHeapSize(String offHeapSize) {
+        this.offHeapSize = offHeapSize;
+        return this;
+    }
+}
@@ -0,0 +1,46 @@
+package cn.jcloud.jaf.rdb.cache;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.Configuration;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.ehcache.EhCacheRegionFactory;
+import org.hibernate.cfg.Settings;
+
+import java.util.Properties;
+
+/**
+ * 以{@link EhCacheSupport}登记的配置创建独立CacheManager的区域工厂
+ * 每个EntityManagerFactory持有各自的CacheManager并随其关闭，上下文重建时使用新的配置。
+ */
+public class ConfiguredEhCacheRegionFactory extends EhCacheRegionFactory {
+
+    public ConfiguredEhCacheRegionFactory() {
+        super();
+    }
+
+    public ConfiguredEhCacheRegionFactory(Properties properties) {
+        super(properties);
+    }
+
+    @Override
+    public void start(Settings settings, Properties properties) throws CacheException {
+        this.settings = settings;
+        if (manager != null) {
+            return;
+        }
+        String name = properties == null ? null : properties.getProperty(EhCacheSupport.CACHE_MANAGER_PROPERTY);
+        Configuration configuration = name == null ? null : EhCacheSupport.takeConfiguration(name);
+        if (configuration == null) {
+            throw new CacheException("未找到ehcache配置：" + name);
+        }
+        manager = new CacheManager(configuration);
+    }
+
+    @Override
+    public void stop() {
+        if (manager != null) {
+            manager.shutdown();
+            manager = null;
+        }
+    }
+}
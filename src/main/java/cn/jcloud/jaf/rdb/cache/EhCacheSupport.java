@@ -0,0 +1,80 @@
+package cn.jcloud.jaf.rdb.cache;
+
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.hibernate.cache.internal.StandardQueryCache;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.hibernate.cfg.Environment;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于ehcache的hibernate二级缓存初始化
+ * 以编程方式生成配置，由{@link ConfiguredEhCacheRegionFactory}创建该EntityManagerFactory独有的CacheManager，无需ehcache.xml。
+ * 不使用单例CacheManager，避免上下文重建时沿用旧配置。
+ * 仅在开启二级缓存时加载，ehcache为可选依赖。
+ */
+public final class EhCacheSupport {
+
+    /**
+     * 传递CacheManager名称的hibernate属性，区域工厂以此取回配置
+     */
+    static final String CACHE_MANAGER_PROPERTY = "jaf.rdb.ehcache.cache_manager";
+
+    private static final String CACHE_MANAGER_NAME = "jaf-rdb";
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    /*
+     * 已生成尚未被区域工厂取走的配置，CacheManager名称在JVM内须唯一
+     */
+    private static final ConcurrentMap<String, Configuration> CONFIGURATIONS = new ConcurrentHashMap<>();
+
+    private EhCacheSupport() {
+    }
+
+    /**
+     * 生成缓存配置并写入区域工厂相关的hibernate属性
+     *
+     * @param jpaProperties hibernate属性
+     * @param defaults      默认区域配置，用于未单独配置的实体及查询缓存
+     * @param regions       按区域名(实体类全名)单独配置
+     */
+    public static void initialize(Map<String, Object> jpaProperties, CacheRegionSettings defaults,
+                                  Map<String, CacheRegionSettings> regions) {
+        String name = CACHE_MANAGER_NAME + "-" + SEQUENCE.incrementAndGet();
+        Configuration configuration = new Configuration();
+        configuration.setName(name);
+        configuration.setUpdateCheck(false);
+        configuration.defaultCache(toCacheConfiguration(null, defaults));
+        for (Map.Entry<String, CacheRegionSettings> entry : regions.entrySet()) {
+            configuration.addCache(toCacheConfiguration(entry.getKey(), entry.getValue()));
+        }
+        //更新时间戳缓存不能过期或淘汰，否则查询缓存可能返回脏数据
+        configuration.addCache(new CacheConfiguration(UpdateTimestampsCache.REGION_NAME, 0).eternal(true));
+        if (!regions.containsKey(StandardQueryCache.class.getName())) {
+            configuration.addCache(toCacheConfiguration(StandardQueryCache.class.getName(), defaults));
+        }
+        CONFIGURATIONS.put(name, configuration);
+        jpaProperties.put(CACHE_MANAGER_PROPERTY, name);
+        jpaProperties.put(Environment.CACHE_REGION_FACTORY, ConfiguredEhCacheRegionFactory.class.getName());
+    }
+
+    static Configuration takeConfiguration(String name) {
+        return CONFIGURATIONS.remove(name);
+    }
+
+    private static CacheConfiguration toCacheConfiguration(String name, CacheRegionSettings settings) {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration(name, settings.getMaxEntries())
+                .memoryStoreEvictionPolicy("LRU")
+                .timeToLiveSeconds(settings.getTtlSeconds())
+                .eternal(settings.getTtlSeconds() <= 0);
+        if (settings.getOffHeapSize() != null) {
+            cacheConfiguration.overflowToOffHeap(true).maxMemoryOffHeap(settings.getOffHeapSize());
+        }
+        return cacheConfiguration;
+    }
+}
@@ -2,11 +2,29 @@ package cn.jcloud.jaf.rdb.config;
 
 import cn.jcloud.jaf.common.constant.ErrorCode;
 import cn.jcloud.jaf.common.exception.JafI18NException;
+import cn.jcloud.jaf.rdb.base.repository.ListParamAsyncExecutor;
+import cn.jcloud.jaf.rdb.base.repository.ListParamCountCache;
+import cn.jcloud.jaf.rdb.base.repository.ListParamIndexAdvisor;
+import cn.jcloud.jaf.rdb.base.repository.ListParamJpaUtil;
+import cn.jcloud.jaf.rdb.base.repository.ListParamQueryCache;
+import cn.jcloud.jaf.rdb.base.repository.WriteBehindBuffer;
+import cn.jcloud.jaf.rdb.cache.CacheRegionSettings;
+import cn.jcloud.jaf.rdb.cache.EhCacheSupport;
+import cn.jcloud.jaf.rdb.datasource.DruidPoolAutoSizer;
+import cn.jcloud.jaf.rdb.datasource.DruidPoolWarmer;
+import cn.jcloud.jaf.rdb.datasource.ReadWriteRoutingDataSource;
+import cn.jcloud.jaf.rdb.datasource.ShardingDataSource;
+import cn.jcloud.jaf.rdb.index.EntityIndex;
+import cn.jcloud.jaf.rdb.json.JsonTypeDefinitions;
+import cn.jcloud.jaf.rdb.metrics.RDBMetrics;
+import cn.jcloud.jaf.rdb.shard.ShardRouter;
+import cn.jcloud.jaf.rdb.shard.ShardStrategy;
 import com.alibaba.druid.pool.DruidDataSource;
 import com.alibaba.druid.pool.DruidDataSourceFactory;
 import com.alibaba.druid.pool.vendor.MySqlValidConnectionChecker;
 import org.hibernate.cfg.Environment;
 import org.hibernate.dialect.Dialect;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.support.PropertiesLoaderUtils;
@@ -14,25 +32,59 @@ import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+import org.springframework.orm.jpa.persistenceunit.PersistenceUnitPostProcessor;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.util.ClassUtils;
 
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.SharedCacheMode;
 import javax.persistence.ValidationMode;
 import javax.sql.DataSource;
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by wei Han on 2016/5/9.
  */
 @EnableTransactionManagement(proxyTargetClass = true)
 @EnableJpaAuditing
-public class AbstractRDBConfigurerAdapter {
+public class AbstractRDBConfigurerAdapter implements DisposableBean {
 
     public static final String JAF_RDB_PROPERTIES_FILE_NAME = "rdb.properties";
 
+    /*
+     * 从库配置前缀，如：
+     * replica.names=r1,r2
+     * replica.r1.url=jdbc:mysql://...
+     * replica.r1.weight=2
+     * 从库未配置的项沿用主库配置
+     */
+    private static final String REPLICA_PREFIX = "replica.";
+
+    private static final String SHARD_PREFIX = "shard.";
+
+    private static final long DEFAULT_REPLICA_CHECK_INTERVAL = 5000L;
+
+    private static final String REWRITE_BATCHED_STATEMENTS = "rewriteBatchedStatements";
+
+    private static final String WARMUP_SQL_PREFIX = "warmup.sql.";
+
+    /*
+     * 随上下文关闭停止的连接池自动伸缩任务
+     */
+    private final List<DruidPoolAutoSizer> poolAutoSizers = new CopyOnWriteArrayList<>();
+
     @Bean
     public Dialect dialect() {
         return new Utf8mb4MySQL5InnoDBDialect();
@@ -50,37 +102,299 @@ public class AbstractRDBConfigurerAdapter {
         return jdbcTemplate;
     }
 
+    /**
+     * 是否按实体更新表结构，配置了分片时逐个分片更新
+     */
     protected boolean generateDdl() {
         return true;
     }
 
     protected boolean showSql() {
-        //默认仅开发环境打印sql
+        //默认不打印sql，慢查询由RDBMetrics采样记录；开发环境可通过-Djaf.rdb.showSql=true开启
+        return Boolean.getBoolean("jaf.rdb.showSql");
+    }
+
+    /**
+     * 慢查询阈值，单位毫秒
+     */
+    protected long slowQueryMillis() {
+        return RDBMetrics.DEFAULT_SLOW_QUERY_MILLIS;
+    }
+
+    /**
+     * 慢查询日志采样率，取值[0, 1]
+     */
+    protected double slowQuerySampleRate() {
+        return 1.0;
+    }
+
+    /**
+     * ListParam查询语句缓存容量，小于等于0时关闭
+     */
+    protected int listParamQueryCacheSize() {
+        return ListParamQueryCache.DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * ListParam总数缓存过期时间，单位毫秒
+     */
+    protected long listParamCountCacheTtl() {
+        return ListParamCountCache.DEFAULT_TTL_MILLIS;
+    }
+
+    /**
+     * ListParam异步查询最大并发数，应小于连接池maxActive
+     */
+    protected int listParamAsyncConcurrency() {
+        return ListParamAsyncExecutor.DEFAULT_MAX_CONCURRENCY;
+    }
+
+    /**
+     * ListParam异步查询是否使用虚拟线程，JDK不支持时使用平台线程
+     */
+    protected boolean listParamAsyncVirtualThreads() {
+        return false;
+    }
+
+    /**
+     * 是否记录ListParam查询形态用于索引建议，报告见{@link ListParamIndexAdvisor#report()}
+     */
+    protected boolean indexAdvisorEnabled() {
+        return false;
+    }
+
+    /**
+     * 索引建议每次生成报告时执行EXPLAIN的形态数上限
+     */
+    protected int indexAdvisorMaxExplains() {
+        return ListParamIndexAdvisor.DEFAULT_MAX_EXPLAINS;
+    }
+
+    /**
+     * 合并写写入间隔，单位毫秒，即合并写的最大延迟
+     */
+    protected long writeBehindFlushInterval() {
+        return WriteBehindBuffer.DEFAULT_FLUSH_INTERVAL_MILLIS;
+    }
+
+    /**
+     * 单个实体合并写待写id数上限，超过时立即写入
+     */
+    protected int writeBehindMaxPending() {
+        return WriteBehindBuffer.DEFAULT_MAX_PENDING;
+    }
+
+    /**
+     * JDBC批量写入条数，默认0即关闭批量写入，写入行为与未开启时一致；
+     * 大于0时开启hibernate批量写入、按实体排序插入与更新、带版本号实体的批量更新，并为数据源开启rewriteBatchedStatements，
+     * 建议取值50
+     */
+    protected int jdbcBatchSize() {
+        return 0;
+    }
+
+    /**
+     * 是否开启二级缓存，开启后使用{@code @Cacheable}标注或{@link #cacheRegions()}中配置的实体将被缓存，
+     * 需引入hibernate-ehcache依赖
+     */
+    protected boolean secondLevelCacheEnabled() {
+        return false;
+    }
+
+    /**
+     * 是否开启查询缓存，仅对可缓存实体的ListParam查询生效
+     */
+    protected boolean queryCacheEnabled() {
         return true;
     }
 
+    /**
+     * 二级缓存默认区域配置
+     */
+    protected CacheRegionSettings defaultCacheRegion() {
+        return new CacheRegionSettings();
+    }
+
+    /**
+     * 按实体单独配置的二级缓存区域，其中的实体无需{@code @Cacheable}标注即开启缓存
+     */
+    protected Map<Class<?>, CacheRegionSettings> cacheRegions() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 是否注册JSON列类型{@link cn.jcloud.jaf.rdb.json.JsonDocument}，默认在引入Jackson时开启；
+     * 文档序列化使用的ObjectMapper可通过JsonDocument.setObjectMapper设置
+     */
+    protected boolean jsonTypeEnabled() {
+        return ClassUtils.isPresent("com.fasterxml.jackson.databind.ObjectMapper", getClass().getClassLoader());
+    }
+
+    /**
+     * 分片策略，仅在rdb.properties配置了shard.names时生效
+     */
+    protected ShardStrategy shardStrategy() {
+        return ShardRouter.MODULO;
+    }
+
+    /**
+     * 是否优先使用编译期生成的实体索引注册实体，索引中没有{@link #getMappingBasePackage()}下的实体时退回包扫描；
+     * 依赖中未经索引处理编译的实体不会被注册，须确认全部实体所在模块均已生成索引后再开启
+     */
+    protected boolean useEntityIndex() {
+        return false;
+    }
+
+    /**
+     * 是否在后台线程构建EntityManagerFactory，容器中其它bean的初始化不再等待实体映射解析完成
+     */
+    protected boolean bootstrapInBackground() {
+        return false;
+    }
+
+    /**
+     * 是否将表结构更新移出启动过程，在EntityManagerFactory构建完成后由后台线程执行，仅在{@link #generateDdl()}开启时生效
+     */
+    protected boolean deferSchemaUpdate() {
+        return false;
+    }
+
     protected String getMappingBasePackage() {
         return "cn.jcloud";
     }
 
     @Bean
     public EntityManagerFactory entityManagerFactory() {
+        //先创建数据源以确定分片数
+        DataSource dataSource = dataSource();
         HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
-        vendorAdapter.setGenerateDdl(generateDdl());
+        boolean deferSchemaUpdate = generateDdl() && deferSchemaUpdate();
+        //hbm2ddl只更新默认分片，分片时改为逐个分片更新
+        boolean sharded = ShardRouter.getInstance().getShardCount() > 1;
+        boolean updateEachShard = generateDdl() && (deferSchemaUpdate || sharded);
+        vendorAdapter.setGenerateDdl(generateDdl() && !updateEachShard);
         vendorAdapter.setShowSql(showSql());
 
         LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
 
         factory.setJpaVendorAdapter(vendorAdapter);
-        factory.setPackagesToScan(getMappingBasePackage());
-        factory.setDataSource(dataSource());
+        configureManagedTypes(factory);
+        factory.setDataSource(dataSource);
         factory.getJpaPropertyMap().put("hibernate.ejb.naming_strategy", "org.hibernate.cfg.ImprovedNamingStrategy");
         factory.getJpaPropertyMap().put(Environment.DIALECT, dialect().getClass().getCanonicalName());
+        if (jdbcBatchSize() > 0) {
+            //id由DistributedIdentifierGenerator生成，非IDENTITY，插入可批量执行
+            factory.getJpaPropertyMap().put(Environment.STATEMENT_BATCH_SIZE, String.valueOf(jdbcBatchSize()));
+            factory.getJpaPropertyMap().put(Environment.ORDER_INSERTS, "true");
+            factory.getJpaPropertyMap().put(Environment.ORDER_UPDATES, "true");
+            factory.getJpaPropertyMap().put(Environment.BATCH_VERSIONED_DATA, "true");
+        }
+        if (secondLevelCacheEnabled()) {
+            configureSecondLevelCache(factory);
+        }
+        if (updateEachShard) {
+            factory.getJpaPropertyMap().put(org.hibernate.jpa.AvailableSettings.INTEGRATOR_PROVIDER,
+                    new SchemaUpdater(deferSchemaUpdate));
+        }
         factory.setValidationMode(ValidationMode.NONE);
+        if (bootstrapInBackground()) {
+            return BackgroundEntityManagerFactory.bootstrap(factory, vendorAdapter.getEntityManagerFactoryInterface());
+        }
         factory.afterPropertiesSet();
         return factory.getObject();
     }
 
+    private void configureManagedTypes(LocalContainerEntityManagerFactoryBean factory) {
+        final List<String> indexed = useEntityIndex()
+                ? EntityIndex.load(getClass().getClassLoader(), getMappingBasePackage()) : null;
+        if (indexed == null) {
+            factory.setPackagesToScan(getMappingBasePackage());
+        } else {
+            //扫描包为空时仍构建默认持久化单元，实体由索引逐个注册
+            factory.setPackagesToScan();
+        }
+        final boolean jsonType = jsonTypeEnabled();
+        factory.setPersistenceUnitPostProcessors(new PersistenceUnitPostProcessor() {
+            @Override
+            public void postProcessPersistenceUnitInfo(MutablePersistenceUnitInfo pui) {
+                List<String> classNames = pui.getManagedClassNames();
+                if (indexed != null) {
+                    for (String className : indexed) {
+                        if (!classNames.contains(className)) {
+                            pui.addManagedClassName(className);
+                        }
+                    }
+                }
+                if (jsonType) {
+                    //类级别的TypeDef须先于使用它的实体绑定
+                    classNames.remove(JsonTypeDefinitions.CLASS_NAME);
+                    classNames.add(0, JsonTypeDefinitions.CLASS_NAME);
+                }
+            }
+        });
+    }
+
+    private void configureSecondLevelCache(LocalContainerEntityManagerFactoryBean factory) {
+        Map<String, CacheRegionSettings> regions = new HashMap<>();
+        for (Map.Entry<Class<?>, CacheRegionSettings> entry : cacheRegions().entrySet()) {
+            String entityName = entry.getKey().getName();
+            regions.put(entityName, entry.getValue());
+            factory.getJpaPropertyMap().put("hibernate.ejb.classcache." + entityName, "read-write");
+        }
+        EhCacheSupport.initialize(factory.getJpaPropertyMap(), defaultCacheRegion(), regions);
+        factory.setSharedCacheMode(SharedCacheMode.ENABLE_SELECTIVE);
+        factory.getJpaPropertyMap().put(Environment.USE_SECOND_LEVEL_CACHE, "true");
+        factory.getJpaPropertyMap().put(Environment.USE_QUERY_CACHE, String.valueOf(queryCacheEnabled()));
+    }
+
+    @Bean
+    public ListParamQueryCache listParamQueryCache() {
+        ListParamQueryCache queryCache = ListParamJpaUtil.getQueryCache();
+        queryCache.setMaxSize(listParamQueryCacheSize());
+        return queryCache;
+    }
+
+    @Bean
+    public ListParamCountCache listParamCountCache() {
+        ListParamCountCache countCache = ListParamJpaUtil.getCountCache();
+        countCache.setTtlMillis(listParamCountCacheTtl());
+        return countCache;
+    }
+
+    @Bean
+    public ListParamAsyncExecutor listParamAsyncExecutor() {
+        ListParamAsyncExecutor asyncExecutor = ListParamJpaUtil.getAsyncExecutor();
+        asyncExecutor.setMaxConcurrency(listParamAsyncConcurrency());
+        asyncExecutor.setVirtualThreads(listParamAsyncVirtualThreads());
+        return asyncExecutor;
+    }
+
+    @Bean
+    public ListParamIndexAdvisor listParamIndexAdvisor() {
+        ListParamIndexAdvisor indexAdvisor = ListParamJpaUtil.getIndexAdvisor();
+        indexAdvisor.setJdbcTemplate(jdbcTemplate());
+        indexAdvisor.setMaxExplains(indexAdvisorMaxExplains());
+        indexAdvisor.setEnabled(indexAdvisorEnabled());
+        return indexAdvisor;
+    }
+
+    @Bean
+    public WriteBehindBuffer writeBehindBuffer() {
+        WriteBehindBuffer buffer = WriteBehindBuffer.getInstance();
+        buffer.setJdbcTemplate(jdbcTemplate());
+        buffer.setFlushIntervalMillis(writeBehindFlushInterval());
+        buffer.setMaxPending(writeBehindMaxPending());
+        return buffer;
+    }
+
+    @Bean
+    public RDBMetrics rdbMetrics() {
+        RDBMetrics metrics = RDBMetrics.getInstance();
+        metrics.setSlowQueryMillis(slowQueryMillis());
+        metrics.setSlowQuerySampleRate(slowQuerySampleRate());
+        return metrics;
+    }
+
     @Bean
     public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
         JpaTransactionManager txManager = new JpaTransactionManager();
@@ -95,15 +409,165 @@ public class AbstractRDBConfigurerAdapter {
         } catch (IOException e) {
             throw JafI18NException.of(ErrorCode.CONFIG_LOADING_FAIL, e, JAF_RDB_PROPERTIES_FILE_NAME);
         }
+        Properties defaultShardProperties = new Properties();
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.startsWith(SHARD_PREFIX)) {
+                defaultShardProperties.setProperty(name, properties.getProperty(name));
+            }
+        }
+        DataSource defaultShard = createShardDataSource("", defaultShardProperties);
+        String shardNames = properties.getProperty(SHARD_PREFIX + "names");
+        if (shardNames == null || shardNames.trim().isEmpty()) {
+            return defaultShard;
+        }
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(defaultShard);
+        for (String shardName : shardNames.split(",")) {
+            shardName = shardName.trim();
+            if (shardName.isEmpty()) {
+                continue;
+            }
+            //分片未配置的项沿用默认分片的配置，从库配置除外
+            String prefix = SHARD_PREFIX + shardName + ".";
+            Properties shardProperties = new Properties();
+            for (String name : defaultShardProperties.stringPropertyNames()) {
+                if (!name.startsWith(REPLICA_PREFIX)) {
+                    shardProperties.setProperty(name, defaultShardProperties.getProperty(name));
+                }
+            }
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(prefix)) {
+                    shardProperties.setProperty(name.substring(prefix.length()), properties.getProperty(name));
+                }
+            }
+            shards.add(createShardDataSource(prefix, shardProperties));
+        }
+        ShardRouter.getInstance().setShardCount(shards.size());
+        ShardRouter.getInstance().setStrategy(shardStrategy());
+        return new ShardingDataSource(shards);
+    }
+
+    /*
+     * 创建单个分片的数据源，配置了从库时为读写分离数据源
+     */
+    private DataSource createShardDataSource(String metricPrefix, Properties properties) {
+        Properties primaryProperties = new Properties();
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.startsWith(REPLICA_PREFIX)) {
+                primaryProperties.setProperty(name, properties.getProperty(name));
+            }
+        }
+        DruidDataSource primary = createDataSource(primaryProperties);
+        RDBMetrics.getInstance().registerDataSource(metricPrefix + "primary", primary);
+
+        String replicaNames = properties.getProperty(REPLICA_PREFIX + "names");
+        if (replicaNames == null || replicaNames.trim().isEmpty()) {
+            return primary;
+        }
+        List<ReadWriteRoutingDataSource.Replica> replicas = new ArrayList<>();
+        for (String replicaName : replicaNames.split(",")) {
+            replicaName = replicaName.trim();
+            if (replicaName.isEmpty()) {
+                continue;
+            }
+            //从库未配置的项沿用主库配置
+            String prefix = REPLICA_PREFIX + replicaName + ".";
+            Properties replicaProperties = new Properties();
+            replicaProperties.putAll(primaryProperties);
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(prefix)) {
+                    replicaProperties.setProperty(name.substring(prefix.length()), properties.getProperty(name));
+                }
+            }
+            int weight = Integer.parseInt(replicaProperties.getProperty("weight", "1").trim());
+            replicaProperties.remove("weight");
+            if (weight > 0) {
+                DruidDataSource replica = createDataSource(replicaProperties);
+                RDBMetrics.getInstance().registerDataSource(metricPrefix + REPLICA_PREFIX + replicaName, replica);
+                replicas.add(new ReadWriteRoutingDataSource.Replica(replicaName, replica, weight));
+            }
+        }
+        if (replicas.isEmpty()) {
+            return primary;
+        }
+        long checkInterval = Long.parseLong(properties.getProperty(REPLICA_PREFIX + "checkIntervalMillis",
+                String.valueOf(DEFAULT_REPLICA_CHECK_INTERVAL)).trim());
+        return new ReadWriteRoutingDataSource(primary, replicas, createValidConnectionChecker(), checkInterval);
+    }
+
+    private DruidDataSource createDataSource(Properties properties) {
+        DruidDataSource dataSource;
         try {
-            DruidDataSource dataSource = (DruidDataSource) DruidDataSourceFactory.createDataSource(properties);
-            MySqlValidConnectionChecker validConnectionChecker = new MySqlValidConnectionChecker();
-            validConnectionChecker.setUsePingMethod(false);
-            dataSource.setValidConnectionChecker(validConnectionChecker);
-            return dataSource;
+            dataSource = (DruidDataSource) DruidDataSourceFactory.createDataSource(properties);
+            dataSource.setValidConnectionChecker(createValidConnectionChecker());
+            String url = dataSource.getUrl();
+            if (jdbcBatchSize() > 0 && (url == null || !url.contains(REWRITE_BATCHED_STATEMENTS))) {
+                //由驱动将批量INSERT改写为多值INSERT
+                dataSource.addConnectionProperty(REWRITE_BATCHED_STATEMENTS, "true");
+            }
         } catch (Exception e) {
             String message = "create datasource with config [" + JAF_RDB_PROPERTIES_FILE_NAME + "] failure";
             throw JafI18NException.of(message, ErrorCode.CONFIG_LOADING_FAIL, e);
         }
+        managePool(dataSource, properties);
+        return dataSource;
+    }
+
+    /*
+     * 连接池预热及自动伸缩，配置项：
+     * warmup.enabled=false 是否在启动时同步建立并校验minIdle个连接，开启后建连耗时计入启动时间
+     * warmup.sql.<序号>=... 预热时预编译的语句
+     * autosize.enabled=false 是否自动伸缩maxActive
+     * autosize.lowerMaxActive/autosize.upperMaxActive maxActive调整范围，默认为minIdle与maxActive
+     * autosize.waitThresholdMillis=10 平均等待超过该值时扩容
+     * autosize.intervalMillis=5000 采样间隔
+     */
+    private void managePool(DruidDataSource dataSource, Properties properties) {
+        boolean autosize = Boolean.parseBoolean(properties.getProperty("autosize.enabled", "false").trim());
+        int maxActive = dataSource.getMaxActive();
+        int upperMaxActive = Integer.parseInt(properties.getProperty("autosize.upperMaxActive",
+                String.valueOf(maxActive)).trim());
+        int lowerMaxActive = Integer.parseInt(properties.getProperty("autosize.lowerMaxActive",
+                String.valueOf(Math.max(1, dataSource.getMinIdle()))).trim());
+        if (autosize) {
+            //连接数组按初始化时的maxActive分配，以上限初始化后再回调
+            dataSource.setMaxActive(upperMaxActive);
+        }
+
+        if (Boolean.parseBoolean(properties.getProperty("warmup.enabled", "false").trim())) {
+            Map<String, String> statements = new TreeMap<>();
+            for (String name : properties.stringPropertyNames()) {
+                if (name.startsWith(WARMUP_SQL_PREFIX)) {
+                    statements.put(name, properties.getProperty(name));
+                }
+            }
+            DruidPoolWarmer.warmUp(dataSource, new ArrayList<>(statements.values()));
+        }
+
+        if (autosize) {
+            try {
+                dataSource.init();
+            } catch (SQLException e) {
+                throw JafI18NException.of("init datasource failure", ErrorCode.CONFIG_LOADING_FAIL, e);
+            }
+            dataSource.setMaxActive(Math.max(lowerMaxActive, Math.min(maxActive, upperMaxActive)));
+            poolAutoSizers.add(new DruidPoolAutoSizer(dataSource, lowerMaxActive, upperMaxActive,
+                    Long.parseLong(properties.getProperty("autosize.waitThresholdMillis", "10").trim()),
+                    Long.parseLong(properties.getProperty("autosize.intervalMillis", "5000").trim())));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (DruidPoolAutoSizer autoSizer : poolAutoSizers) {
+            autoSizer.close();
+        }
+        poolAutoSizers.clear();
+    }
+
+    private static MySqlValidConnectionChecker createValidConnectionChecker() {
+        MySqlValidConnectionChecker validConnectionChecker = new MySqlValidConnectionChecker();
+        validConnectionChecker.setUsePingMethod(false);
+        return validConnectionChecker;
     }
 }
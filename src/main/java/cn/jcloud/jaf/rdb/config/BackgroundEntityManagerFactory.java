@@ -0,0 +1,106 @@
+package cn.jcloud.jaf.rdb.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.jpa.EntityManagerFactoryInfo;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 后台构建EntityManagerFactory
+ * 构建在独立线程中进行，先返回代理供容器继续初始化其它bean；除数据源、方言等可直接由factory bean回答的元信息外，
+ * 对代理的首次调用会阻塞至构建完成，构建失败时以{@link IllegalStateException}抛出。
+ */
+final class BackgroundEntityManagerFactory implements InvocationHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BackgroundEntityManagerFactory.class);
+
+    private final LocalContainerEntityManagerFactoryBean factory;
+
+    private final FutureTask<EntityManagerFactory> bootstrap;
+
+    private BackgroundEntityManagerFactory(final LocalContainerEntityManagerFactoryBean factory) {
+        this.factory = factory;
+        this.bootstrap = new FutureTask<>(new Callable<EntityManagerFactory>() {
+            @Override
+            public EntityManagerFactory call() {
+                long start = System.currentTimeMillis();
+                factory.afterPropertiesSet();
+                LOG.info("EntityManagerFactory后台构建完成，耗时{}ms", System.currentTimeMillis() - start);
+                return factory.getNativeEntityManagerFactory();
+            }
+        });
+    }
+
+    static EntityManagerFactory bootstrap(LocalContainerEntityManagerFactoryBean factory,
+                                          Class<? extends EntityManagerFactory> emfInterface) {
+        //afterPropertiesSet前factory bean尚未从vendor adapter取得以下元信息，此处提前设置，使其无需等待构建
+        if (factory.getJpaVendorAdapter() != null) {
+            factory.setJpaDialect(factory.getJpaVendorAdapter().getJpaDialect());
+            factory.setEntityManagerInterface(factory.getJpaVendorAdapter().getEntityManagerInterface());
+        }
+        BackgroundEntityManagerFactory handler = new BackgroundEntityManagerFactory(factory);
+        Thread thread = new Thread(handler.bootstrap, "jaf-rdb-emf-bootstrap");
+        thread.setDaemon(true);
+        thread.start();
+        Class<?>[] interfaces = emfInterface == null || emfInterface == EntityManagerFactory.class
+                ? new Class<?>[]{EntityManagerFactory.class, EntityManagerFactoryInfo.class}
+                : new Class<?>[]{emfInterface, EntityManagerFactoryInfo.class};
+        return (EntityManagerFactory) Proxy.newProxyInstance(
+                BackgroundEntityManagerFactory.class.getClassLoader(), interfaces, handler);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "BackgroundEntityManagerFactory[" + (bootstrap.isDone() ? "ready" : "bootstrapping") + "]";
+            case "getNativeEntityManagerFactory":
+                return get();
+            case "getPersistenceUnitInfo":
+                get();
+                return factory.getPersistenceUnitInfo();
+            case "isOpen":
+                return !bootstrap.isDone() || get().isOpen();
+            default:
+                break;
+        }
+        Object target = method.getDeclaringClass() == EntityManagerFactoryInfo.class ? factory : get();
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private EntityManagerFactory get() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return bootstrap.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("EntityManagerFactory后台构建失败", e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
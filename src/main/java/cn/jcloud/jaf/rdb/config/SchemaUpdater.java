@@ -0,0 +1,88 @@
+package cn.jcloud.jaf.rdb.config;
+
+import cn.jcloud.jaf.rdb.shard.ShardRouter;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.metamodel.source.MetadataImplementor;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 逐个分片执行的表结构更新，代替hbm2ddl(hbm2ddl只在取得的第一个连接所在的默认分片上执行)
+ * 构建SessionFactory时执行SchemaUpdate，每个分片在{@link ShardRouter#enter(int)}下各执行一次，未分片时只有默认分片。
+ * 后台执行时待SessionFactory构建完成后在后台线程中更新，使表结构比对不占用启动时间；
+ * 更新完成前对新增表、列的访问会失败，仅适用于表结构已由发布流程预先变更、更新仅作兜底的场景。
+ */
+final class SchemaUpdater implements Integrator, IntegratorProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaUpdater.class);
+
+    private final boolean background;
+
+    SchemaUpdater(boolean background) {
+        this.background = background;
+    }
+
+    @Override
+    public List<Integrator> getIntegratorList() {
+        return Collections.<Integrator>singletonList(this);
+    }
+
+    @Override
+    public void integrate(final Configuration configuration, SessionFactoryImplementor sessionFactory,
+                          final SessionFactoryServiceRegistry serviceRegistry) {
+        if (!background) {
+            updateAll(configuration, serviceRegistry);
+            return;
+        }
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                updateAll(configuration, serviceRegistry);
+            }
+        }, "jaf-rdb-schema-update");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void updateAll(Configuration configuration, SessionFactoryServiceRegistry serviceRegistry) {
+        ShardRouter router = ShardRouter.getInstance();
+        for (int shard = 0, count = router.getShardCount(); shard < count; shard++) {
+            long start = System.currentTimeMillis();
+            List<?> exceptions;
+            Integer previous = router.enter(shard);
+            try {
+                SchemaUpdate schemaUpdate = new SchemaUpdate(serviceRegistry, configuration);
+                schemaUpdate.execute(false, true);
+                exceptions = schemaUpdate.getExceptions();
+            } finally {
+                router.exit(previous);
+            }
+            if (exceptions.isEmpty()) {
+                LOG.info("分片{}表结构更新完成，耗时{}ms", shard, System.currentTimeMillis() - start);
+            } else {
+                for (Object e : exceptions) {
+                    LOG.error("分片" + shard + "表结构更新失败", (Throwable) e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void integrate(MetadataImplementor metadata, SessionFactoryImplementor sessionFactory,
+                          SessionFactoryServiceRegistry serviceRegistry) {
+        //新元模型在hibernate 4.x中未启用
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        //nothing
+    }
+}
@@ -1,14 +1,29 @@
 package cn.jcloud.jaf.rdb.config;
 
+import cn.jcloud.jaf.rdb.json.JsonPaths;
 import org.hibernate.dialect.MySQL5InnoDBDialect;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
 
 /**
  * hibernate方言，支持utf8mb4
  * Created by Zhang Jinlong(150429) on 2016/5/6.
  */
 public class Utf8mb4MySQL5InnoDBDialect extends MySQL5InnoDBDialect {
+
+    public Utf8mb4MySQL5InnoDBDialect() {
+        super();
+        //JSON路径条件，见JsonPaths
+        registerFunction(JsonPaths.TEXT_FUNCTION, new SQLFunctionTemplate(StandardBasicTypes.STRING,
+                JsonPaths.TEXT_TEMPLATE));
+        registerFunction(JsonPaths.LONG_FUNCTION, new SQLFunctionTemplate(StandardBasicTypes.LONG,
+                JsonPaths.LONG_TEMPLATE));
+        registerFunction(JsonPaths.DECIMAL_FUNCTION, new SQLFunctionTemplate(StandardBasicTypes.BIG_DECIMAL,
+                JsonPaths.DECIMAL_TEMPLATE));
+    }
+
     @Override
     public String getTableTypeString() {
         return " ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+package cn.jcloud.jaf.rdb.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池自动伸缩
+ * 定期采样活跃连接数及获取连接的等待情况：
+ * 1.出现等待且平均等待超过{@link #waitThresholdMillis}时，按1/4步长扩大maxActive，不超过上限
+ * 2.近期活跃连接数p95低于maxActive一半且无等待时，按1/8步长缩小maxActive，不低于下限
+ * 3.minIdle跟随活跃连接数p95，使常态负载所需连接保持建立
+ * 连接池须以上限作为maxActive初始化，运行期仅在上限以内调整。
+ */
+public class DruidPoolAutoSizer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DruidPoolAutoSizer.class);
+
+    /*
+     * 计算分位数所用的采样窗口
+     */
+    private static final int WINDOW = 60;
+
+    private final DruidDataSource dataSource;
+
+    private final int lowerMaxActive;
+
+    private final int upperMaxActive;
+
+    private final int baseMinIdle;
+
+    private final long waitThresholdMillis;
+
+    private final int[] samples = new int[WINDOW];
+
+    private int sampleCount;
+
+    private long lastWaitCount;
+
+    private long lastWaitMillis;
+
+    private final ScheduledExecutorService executor;
+
+    public DruidPoolAutoSizer(DruidDataSource dataSource, int lowerMaxActive, int upperMaxActive,
+                              long waitThresholdMillis, long intervalMillis) {
+        this.dataSource = dataSource;
+        this.lowerMaxActive = lowerMaxActive;
+        this.upperMaxActive = upperMaxActive;
+        this.baseMinIdle = dataSource.getMinIdle();
+        this.waitThresholdMillis = waitThresholdMillis;
+        this.lastWaitCount = dataSource.getNotEmptyWaitCount();
+        this.lastWaitMillis = dataSource.getNotEmptyWaitMillis();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jaf-rdb-pool-autosize");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    adjust();
+                } catch (RuntimeException e) {
+                    LOG.warn("连接池[{}]自动伸缩失败", DruidPoolAutoSizer.this.dataSource.getName(), e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void adjust() {
+        samples[sampleCount++ % WINDOW] = dataSource.getActiveCount();
+        int[] window = Arrays.copyOf(samples, Math.min(sampleCount, WINDOW));
+        Arrays.sort(window);
+        int p95 = window[(int) Math.ceil(window.length * 0.95) - 1];
+
+        long waitCount = dataSource.getNotEmptyWaitCount();
+        long waitMillis = dataSource.getNotEmptyWaitMillis();
+        long waits = waitCount - lastWaitCount;
+        long averageWait = waits > 0 ? (waitMillis - lastWaitMillis) / waits : 0;
+        lastWaitCount = waitCount;
+        lastWaitMillis = waitMillis;
+
+        int maxActive = dataSource.getMaxActive();
+        int newMaxActive = maxActive;
+        if ((waits > 0 && averageWait >= waitThresholdMillis) || dataSource.getWaitThreadCount() > 0) {
+            newMaxActive = Math.min(upperMaxActive, maxActive + Math.max(1, maxActive / 4));
+        } else if (waits == 0 && p95 * 2 < maxActive) {
+            newMaxActive = Math.max(lowerMaxActive, maxActive - Math.max(1, maxActive / 8));
+        }
+        int newMinIdle = Math.min(newMaxActive, Math.max(baseMinIdle, p95));
+        if (newMaxActive != maxActive || newMinIdle != dataSource.getMinIdle()) {
+            LOG.info("连接池[{}]调整 maxActive {} -> {}, minIdle {} -> {}, 活跃p95={}, 平均等待{}ms",
+                    dataSource.getName(), maxActive, newMaxActive, dataSource.getMinIdle(), newMinIdle,
+                    p95, averageWait);
+            //保证调整过程中minIdle不超过maxActive
+            if (newMaxActive < maxActive) {
+                dataSource.setMinIdle(newMinIdle);
+                dataSource.setMaxActive(newMaxActive);
+            } else {
+                dataSource.setMaxActive(newMaxActive);
+                dataSource.setMinIdle(newMinIdle);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
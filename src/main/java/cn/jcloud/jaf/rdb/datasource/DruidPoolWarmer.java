@@ -0,0 +1,73 @@
+package cn.jcloud.jaf.rdb.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 连接池预热
+ * 启动时同步建立并校验minIdle个连接，并在每个连接上预编译常用语句(开启poolPreparedStatements时进入语句缓存)，
+ * 避免发布后的首批请求承担建连、认证及会话初始化的耗时。
+ */
+public final class DruidPoolWarmer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DruidPoolWarmer.class);
+
+    private DruidPoolWarmer() {
+    }
+
+    /**
+     * 预热失败时仅记录日志，不影响启动
+     *
+     * @param dataSource 连接池
+     * @param statements 需预编译的语句
+     */
+    public static void warmUp(DruidDataSource dataSource, List<String> statements) {
+        long start = System.currentTimeMillis();
+        int size = dataSource.getMinIdle();
+        if (dataSource.getInitialSize() < size) {
+            dataSource.setInitialSize(size);
+        }
+        List<Connection> connections = new ArrayList<>(size);
+        try {
+            dataSource.init();
+            //同时持有minIdle个连接，确保每个连接都被校验及预编译
+            for (int i = 0; i < size; i++) {
+                Connection con = dataSource.getConnection();
+                connections.add(con);
+                validate(con, dataSource.getValidationQuery());
+                for (String sql : statements) {
+                    PreparedStatement ps = con.prepareStatement(sql);
+                    JdbcUtils.closeStatement(ps);
+                }
+            }
+            LOG.info("连接池[{}]预热完成，连接{}个，预编译语句{}条，耗时{}ms", dataSource.getName(), size,
+                    statements.size(), System.currentTimeMillis() - start);
+        } catch (SQLException e) {
+            LOG.warn("连接池[{}]预热失败", dataSource.getName(), e);
+        } finally {
+            for (Connection con : connections) {
+                JdbcUtils.closeConnection(con);
+            }
+        }
+    }
+
+    private static void validate(Connection con, String validationQuery) throws SQLException {
+        if (validationQuery == null || validationQuery.isEmpty()) {
+            return;
+        }
+        PreparedStatement ps = con.prepareStatement(validationQuery);
+        try {
+            ps.execute();
+        } finally {
+            JdbcUtils.closeStatement(ps);
+        }
+    }
+}
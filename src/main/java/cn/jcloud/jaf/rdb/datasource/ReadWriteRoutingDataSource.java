@@ -0,0 +1,200 @@
+package cn.jcloud.jaf.rdb.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.ValidConnectionChecker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离数据源
+ * 只读事务(如{@code @Transactional(readOnly = true)}及BaseRepository.list)按权重轮询路由到从库，其余路由到主库。
+ * 连接延迟到第一条语句执行时才获取，此时事务的只读标识已确定。
+ * 从库由后台线程定期校验，校验失败或获取连接失败的从库暂时剔除，无可用从库时回退到主库。
+ */
+public class ReadWriteRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    private static final String DEFAULT_VALIDATION_QUERY = "SELECT 1";
+
+    /*
+     * 未配置defaultTransactionIsolation时按MySQL InnoDB的默认隔离级别
+     */
+    private static final int DEFAULT_TRANSACTION_ISOLATION = Connection.TRANSACTION_REPEATABLE_READ;
+
+    private final DruidDataSource primary;
+
+    private final List<Replica> replicas;
+
+    /*
+     * 按权重展开的从库下标，轮询时依次取用
+     */
+    private final int[] schedule;
+
+    private final AtomicInteger position = new AtomicInteger();
+
+    private final ValidConnectionChecker validConnectionChecker;
+
+    private final ScheduledExecutorService checkExecutor;
+
+    public ReadWriteRoutingDataSource(DruidDataSource primary, List<Replica> replicas,
+                                      ValidConnectionChecker validConnectionChecker, long checkIntervalMillis) {
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(replicas));
+        this.validConnectionChecker = validConnectionChecker;
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            for (int w = 0; w < replicas.get(i).getWeight(); w++) {
+                slots.add(i);
+            }
+        }
+        this.schedule = new int[slots.size()];
+        for (int i = 0; i < schedule.length; i++) {
+            schedule[i] = slots.get(i);
+        }
+        this.checkExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jaf-rdb-replica-check");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.checkExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                checkReplicas();
+            }
+        }, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+        setTargetDataSource(new Router());
+        //默认属性取自主库配置，未设置时afterPropertiesSet会在构造时从主库获取连接探测
+        setDefaultAutoCommit(primary.isDefaultAutoCommit());
+        Integer isolation = primary.getDefaultTransactionIsolation();
+        setDefaultTransactionIsolation(isolation != null ? isolation : DEFAULT_TRANSACTION_ISOLATION);
+        afterPropertiesSet();
+    }
+
+    public DruidDataSource getPrimary() {
+        return primary;
+    }
+
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    private Connection routeConnection() throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            for (int i = 0; i < schedule.length; i++) {
+                Replica replica = replicas.get(schedule[(position.getAndIncrement() & Integer.MAX_VALUE) % schedule.length]);
+                if (!replica.isAvailable()) {
+                    continue;
+                }
+                try {
+                    return replica.getDataSource().getConnection();
+                } catch (SQLException e) {
+                    LOG.warn("从库[{}]获取连接失败，暂时剔除", replica.getName(), e);
+                    replica.available = false;
+                }
+            }
+        }
+        return primary.getConnection();
+    }
+
+    /*
+     * 校验全部从库并更新可用状态，由后台线程定期调用
+     */
+    void checkReplicas() {
+        for (Replica replica : replicas) {
+            DruidDataSource dataSource = replica.getDataSource();
+            String validationQuery = dataSource.getValidationQuery();
+            if (validationQuery == null || validationQuery.isEmpty()) {
+                validationQuery = DEFAULT_VALIDATION_QUERY;
+            }
+            boolean valid;
+            Connection con = null;
+            try {
+                con = dataSource.getConnection(dataSource.getMaxWait() > 0 ? dataSource.getMaxWait() : 3000L);
+                valid = validConnectionChecker.isValidConnection(con, validationQuery,
+                        dataSource.getValidationQueryTimeout());
+            } catch (Exception e) {
+                LOG.debug("从库[{}]校验失败", replica.getName(), e);
+                valid = false;
+            } finally {
+                JdbcUtils.closeConnection(con);
+            }
+            if (valid != replica.isAvailable()) {
+                LOG.warn("从库[{}]状态变更为{}", replica.getName(), valid ? "可用" : "不可用");
+            }
+            replica.available = valid;
+        }
+    }
+
+    @Override
+    public void close() {
+        checkExecutor.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.getDataSource().close();
+        }
+        primary.close();
+    }
+
+    /**
+     * 从库定义
+     */
+    public static class Replica {
+        private final String name;
+        private final DruidDataSource dataSource;
+        private final int weight;
+        private volatile boolean available = true;
+
+        public Replica(String name, DruidDataSource dataSource, int weight) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.weight = weight;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DruidDataSource getDataSource() {
+            return dataSource;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+    }
+
+    private class Router extends AbstractDataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return routeConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLException("不支持指定用户名密码获取连接");
+        }
+    }
+}
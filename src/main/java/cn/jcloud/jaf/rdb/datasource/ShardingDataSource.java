@@ -0,0 +1,68 @@
+package cn.jcloud.jaf.rdb.datasource;
+
+import cn.jcloud.jaf.rdb.shard.ShardRouter;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分片数据源
+ * 连接延迟到第一条语句执行时才获取，按{@link ShardRouter#connectionShard()}选择分片：当前线程的分片，
+ * 未设置时为当前事务已绑定的分片，否则为默认分片(下标0)；所选分片随即绑定到事务。
+ * 各分片可以是单库，也可以是{@link ReadWriteRoutingDataSource}。
+ */
+public class ShardingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    private final List<DataSource> shards;
+
+    public ShardingDataSource(List<? extends DataSource> shards) {
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        setTargetDataSource(new Router());
+        afterPropertiesSet();
+    }
+
+    public List<DataSource> getShards() {
+        return shards;
+    }
+
+    private Connection routeConnection() throws SQLException {
+        int shard = ShardRouter.getInstance().connectionShard();
+        if (shard < 0 || shard >= shards.size()) {
+            throw new SQLException("分片下标越界: " + shard);
+        }
+        return shards.get(shard).getConnection();
+    }
+
+    @Override
+    public void close() {
+        for (DataSource shard : shards) {
+            if (shard instanceof Closeable) {
+                try {
+                    ((Closeable) shard).close();
+                } catch (IOException e) {
+                    //ignore
+                }
+            }
+        }
+    }
+
+    private class Router extends AbstractDataSource {
+        @Override
+        public Connection getConnection() throws SQLException {
+            return routeConnection();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLException("不支持指定用户名密码获取连接");
+        }
+    }
+}
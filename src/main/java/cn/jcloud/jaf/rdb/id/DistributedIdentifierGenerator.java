@@ -2,6 +2,7 @@ package cn.jcloud.jaf.rdb.id;
 
 import cn.jcloud.jaf.common.handler.SpringContextHolder;
 import cn.jcloud.jaf.common.util.IdUtils;
+import cn.jcloud.jaf.rdb.metrics.RDBMetrics;
 import org.hibernate.dialect.Dialect;
 import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.id.Configurable;
@@ -27,6 +28,14 @@ import java.util.Properties;
  * 注意：这里的{COUNTER_EXPIRE_TIME}不宜设置过大，过大之后，当redis宕掉恢复后，如果计数又重新开始，且又
  * 在同一个{COUNTER_EXPIRE_TIME}时间窗口内，则会引起主键重复。同时又不宜设置过小，会导致频繁的读写redis。
  * 这里主要考虑的是一个{PER_TIME}时间窗口内，redis宕掉之后也无法恢复。
+ * 号段模式：通过生成器参数{@value #MODE_PARAM}={@value #MODE_SEGMENT}开启，以(秒, 集群计数器)为一个号段，
+ * 取号走无锁的CAS快速路径，由后台线程预取下一号段。单秒序列耗尽时允许预借至多{@value #BORROW_SECONDS_PARAM}
+ * 秒(默认{@value #DEFAULT_BORROW_SECONDS})的未来时间，因此实例重启间隔应大于该值。
+ * 号段模式只消除锁竞争，不突破53位布局的上限：每个实体每个实例每秒只能使用一个号段，
+ * 持续取号上限为每秒{@link SegmentIdBuffer#SEGMENT_SIZE}(实例内计数器位数决定)个，预借只能吸收
+ * 预借秒数乘以号段大小的突发；预借用尽后加载号段等待时钟追上，取号随之阻塞。
+ * 租约模式：容器中存在名为{@value WorkerIdLease#BEAN_NAME}的{@link WorkerIdLease}时，集群间计数器取实例占用的worker id，
+ * 取号不再访问redis，也不受redis重启影响；worker id仅用于租约有效期内的秒数。
  * 实现参考：http://www.oschina.net/code/snippet_147955_25122
  * Created by closer on 2016/2/2.
  *
@@ -41,6 +50,14 @@ public class DistributedIdentifierGenerator implements IdentifierGenerator, Conf
      */
     private static final long COUNTER_EXPIRE_TIME = 60 * 5L;
 
+    public static final String MODE_PARAM = "mode";
+
+    public static final String MODE_SEGMENT = "segment";
+
+    public static final String BORROW_SECONDS_PARAM = "borrowSeconds";
+
+    public static final long DEFAULT_BORROW_SECONDS = 3L;
+
     private RedisTemplate<String, String> redisTemplate;
     private RedisScript<String> script;
 
@@ -62,14 +79,44 @@ public class DistributedIdentifierGenerator implements IdentifierGenerator, Conf
      */
     private Boolean distributed;
 
+    /*
+     * worker id租约，为null时使用redis集群计数器
+     */
+    private WorkerIdLease lease;
+
+    /*
+     * 号段模式下的取号缓冲，为null时使用同步取号
+     */
+    private SegmentIdBuffer segmentBuffer;
+
+    /*
+     * 号段模式下允许预借的未来秒数
+     */
+    private long borrowSeconds = DEFAULT_BORROW_SECONDS;
+
     @Override
     public void configure(Type type, Properties params, Dialect d) {
         String jpaEntityName = params.getProperty(IdentifierGenerator.JPA_ENTITY_NAME);
         this.key = "idg:" + jpaEntityName;
+        if (MODE_SEGMENT.equalsIgnoreCase(params.getProperty(MODE_PARAM))) {
+            String borrow = params.getProperty(BORROW_SECONDS_PARAM);
+            if (borrow != null) {
+                this.borrowSeconds = Long.parseLong(borrow.trim());
+            }
+            this.segmentBuffer = new SegmentIdBuffer(jpaEntityName, new SegmentIdBuffer.SegmentLoader() {
+                @Override
+                public SegmentIdBuffer.Segment load() {
+                    return loadSegment();
+                }
+            });
+        }
     }
 
     @Override
     public Serializable generate(SessionImplementor session, Object object) {
+        if (segmentBuffer != null) {
+            return segmentBuffer.nextId();
+        }
         return nextId();
     }
 
@@ -77,10 +124,18 @@ public class DistributedIdentifierGenerator implements IdentifierGenerator, Conf
         if (distributed == null) {
             synchronized (this) {
                 if (distributed == null) {
-                    distributed = SpringContextHolder.existsBean("idgRedisTemplate");
+                    if (SpringContextHolder.existsBean(WorkerIdLease.BEAN_NAME)) {
+                        lease = SpringContextHolder.getBean(WorkerIdLease.BEAN_NAME, WorkerIdLease.class);
+                    }
+                    distributed = lease == null && SpringContextHolder.existsBean("idgRedisTemplate");
                 }
             }
         }
+        if (lease != null) {
+            //每个新的秒数都校验租约
+            counterRefreshTimestamp = timestamp;
+            return lease.workerId(timestamp);
+        }
         if (distributed) {
             return getDistributedCounter(timestamp);
         }
@@ -105,9 +160,11 @@ public class DistributedIdentifierGenerator implements IdentifierGenerator, Conf
         }
 
         //通过脚本，确保key过期与新增在同一个原子操作中
+        long start = System.nanoTime();
         String resultStr = this.redisTemplate.execute(this.script, Collections.<String>emptyList(),
                 key, String.valueOf(COUNTER_EXPIRE_TIME), String.valueOf(IdUtils.COUNTER_MASK),
                 String.valueOf(IdUtils.COUNTER_BITS));
+        RDBMetrics.getInstance().idCounterRefreshed(start);
         String[] result = resultStr.split(",");
         counterRefreshTimestamp = timestamp + Long.parseLong(result[0]);
         return Long.parseLong(result[1]) & IdUtils.COUNTER_MASK;
@@ -117,6 +174,7 @@ public class DistributedIdentifierGenerator implements IdentifierGenerator, Conf
         long timestamp = timeGen();
         if (timestamp < this.lastTimestamp) {
             LOG.error(String.format("时间回退了. 拒绝直到%d的请求", this.lastTimestamp));
+            RDBMetrics.getInstance().idClockBackwards();
             throw new IllegalArgumentException(
                     String.format("Clock moved backwards.  Refusing to generate id for %d milliseconds",
                             this.lastTimestamp - timestamp));
@@ -125,9 +183,14 @@ public class DistributedIdentifierGenerator implements IdentifierGenerator, Conf
         if (timestamp == this.lastTimestamp) {
             this.sequence = (this.sequence + 1) & IdUtils.SEQUENCE_MASK;
             if (this.sequence == 0) {
+                RDBMetrics.getInstance().idGenerated(IdUtils.SEQUENCE_MASK + 1);
                 timestamp = tilNextSecond(this.lastTimestamp);
             }
         } else {
+            if (this.lastTimestamp >= 0) {
+                //取号量按秒汇总，上一秒的取号量在新的一秒开始时计入
+                RDBMetrics.getInstance().idGenerated(this.sequence + 1);
+            }
             this.sequence = 0L;
         }
         if (timestamp > this.counterRefreshTimestamp) {
@@ -139,6 +202,45 @@ public class DistributedIdentifierGenerator implements IdentifierGenerator, Conf
         return IdUtils.generateId(timestamp, this.counter, this.sequence);
     }
 
+    /**
+     * 分配一个新号段，秒数严格递增，超前当前时间不超过{@link #borrowSeconds}；
+     * 预借已达上限时先在锁内占用秒数，再在锁外等待时钟追上后返回，等待期间不占用生成器的锁
+     *
+     * @return 未分配过的号段
+     * @since 1.0
+     */
+    private SegmentIdBuffer.Segment loadSegment() {
+        long second;
+        long segmentCounter;
+        synchronized (this) {
+            long timestamp = timeGen();
+            if (timestamp + this.borrowSeconds < this.lastTimestamp) {
+                LOG.error(String.format("时间回退了. 拒绝直到%d的请求", this.lastTimestamp));
+                RDBMetrics.getInstance().idClockBackwards();
+                throw new IllegalArgumentException(
+                        String.format("Clock moved backwards.  Refusing to generate id for %d seconds",
+                                this.lastTimestamp - timestamp));
+            }
+            second = Math.max(timestamp, this.lastTimestamp + 1);
+            if (second > this.counterRefreshTimestamp) {
+                this.counter = this.getCounter(second);
+            }
+            segmentCounter = this.counter;
+            this.lastTimestamp = second;
+        }
+        long wait = second - timeGen() - this.borrowSeconds;
+        if (wait > 0) {
+            //预借已达上限，等待时钟追上
+            try {
+                Thread.sleep(wait * 1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        RDBMetrics.getInstance().idSegmentLoaded(SegmentIdBuffer.SEGMENT_SIZE);
+        return new SegmentIdBuffer.Segment(second, segmentCounter);
+    }
+
     private static long tilNextSecond(long lastTimestamp) {
         long timestamp = timeGen();
         while (timestamp == lastTimestamp) {
@@ -0,0 +1,86 @@
+package cn.jcloud.jaf.rdb.id;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于MySQL表的worker id协调器，租约持久化在表中，不受缓存重启影响
+ * 表不存在时自动创建
+ *
+ * @since 1.0
+ */
+public class JdbcWorkerIdCoordinator implements WorkerIdCoordinator {
+
+    public static final String DEFAULT_TABLE_NAME = "jaf_idg_worker";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String tableName;
+
+    private volatile boolean tableChecked;
+
+    public JdbcWorkerIdCoordinator(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, DEFAULT_TABLE_NAME);
+    }
+
+    public JdbcWorkerIdCoordinator(JdbcTemplate jdbcTemplate, String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tableName = tableName;
+    }
+
+    @Override
+    public long acquire(String owner, long maxWorkerId, long nowSecond, long expireSecond) {
+        createTableIfNecessary();
+        List<Long> held = jdbcTemplate.queryForList(
+                "select worker_id from " + tableName + " where expire_second >= ?", Long.class, nowSecond);
+        Set<Long> occupied = new HashSet<>(held);
+        //随机起点，降低多实例同时启动时的冲突
+        long start = ThreadLocalRandom.current().nextLong(maxWorkerId + 1);
+        for (long i = 0; i <= maxWorkerId; i++) {
+            long workerId = (start + i) % (maxWorkerId + 1);
+            if (occupied.contains(workerId)) {
+                continue;
+            }
+            int inserted = jdbcTemplate.update("insert ignore into " + tableName
+                    + " (worker_id, owner, expire_second) values (?, ?, ?)", workerId, owner, expireSecond);
+            if (inserted == 1) {
+                return workerId;
+            }
+            int updated = jdbcTemplate.update("update " + tableName
+                            + " set owner = ?, expire_second = ? where worker_id = ? and expire_second < ?",
+                    owner, expireSecond, workerId, nowSecond);
+            if (updated == 1) {
+                return workerId;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean renew(long workerId, String owner, long expireSecond) {
+        return jdbcTemplate.update("update " + tableName
+                        + " set expire_second = ? where worker_id = ? and owner = ?",
+                expireSecond, workerId, owner) == 1;
+    }
+
+    @Override
+    public void release(long workerId, String owner, long expireSecond) {
+        renew(workerId, owner, expireSecond);
+    }
+
+    private void createTableIfNecessary() {
+        if (tableChecked) {
+            return;
+        }
+        jdbcTemplate.execute("create table if not exists " + tableName + " ("
+                + "worker_id int not null primary key, "
+                + "owner varchar(191) not null, "
+                + "expire_second bigint not null"
+                + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+        tableChecked = true;
+    }
+}
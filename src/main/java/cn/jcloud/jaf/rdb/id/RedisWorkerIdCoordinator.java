@@ -0,0 +1,80 @@
+package cn.jcloud.jaf.rdb.id;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于redis的worker id协调器，值为"占用者,到期秒数"
+ * 注意：redis丢失数据后，持有中的id可能在下一次续约前被其它实例占用，原持有者续约失败后即停止使用该id；
+ * 不能接受该窗口时应使用{@link JdbcWorkerIdCoordinator}。
+ *
+ * @since 1.0
+ */
+public class RedisWorkerIdCoordinator implements WorkerIdCoordinator {
+
+    private static final String KEY_PREFIX = "idg:worker:";
+
+    /*
+     * 租约到期后key继续保留的秒数，使到期秒数在释放后仍可被读取
+     */
+    private static final long RETAIN_SECONDS = 60L;
+
+    /*
+     * ARGV依次为占用者、当前秒数、到期秒数、key过期秒数；id空闲或原租约已到期时占用并返回1
+     */
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) "
+                    + "if v then "
+                    + "local sep = string.find(v, ',', 1, true) "
+                    + "if tonumber(string.sub(v, sep + 1)) >= tonumber(ARGV[2]) then return 0 end "
+                    + "end "
+                    + "redis.call('SET', KEYS[1], ARGV[1] .. ',' .. ARGV[3], 'EX', ARGV[4]) "
+                    + "return 1", Long.class);
+
+    /*
+     * ARGV依次为占用者、到期秒数、key过期秒数；仍由占用者持有(或key已丢失)时续约并返回1
+     */
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) "
+                    + "if v and string.sub(v, 1, string.len(ARGV[1]) + 1) ~= ARGV[1] .. ',' then return 0 end "
+                    + "redis.call('SET', KEYS[1], ARGV[1] .. ',' .. ARGV[2], 'EX', ARGV[3]) "
+                    + "return 1", Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisWorkerIdCoordinator(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public long acquire(String owner, long maxWorkerId, long nowSecond, long expireSecond) {
+        long start = ThreadLocalRandom.current().nextLong(maxWorkerId + 1);
+        String ttl = String.valueOf(expireSecond - nowSecond + RETAIN_SECONDS);
+        for (long i = 0; i <= maxWorkerId; i++) {
+            long workerId = (start + i) % (maxWorkerId + 1);
+            Long acquired = redisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(KEY_PREFIX + workerId),
+                    owner, String.valueOf(nowSecond), String.valueOf(expireSecond), ttl);
+            if (acquired != null && acquired == 1L) {
+                return workerId;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean renew(long workerId, String owner, long expireSecond) {
+        long ttl = expireSecond - System.currentTimeMillis() / 1000 + RETAIN_SECONDS;
+        Long renewed = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(KEY_PREFIX + workerId),
+                owner, String.valueOf(expireSecond), String.valueOf(Math.max(ttl, RETAIN_SECONDS)));
+        return renewed != null && renewed == 1L;
+    }
+
+    @Override
+    public void release(long workerId, String owner, long expireSecond) {
+        renew(workerId, owner, expireSecond);
+    }
+}
@@ -0,0 +1,142 @@
+package cn.jcloud.jaf.rdb.id;
+
+import cn.jcloud.jaf.common.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 号段双缓冲
+ * 每个号段对应一个(秒, 集群计数器)组合下的全部实例内序列，取号仅需一次CAS，不加锁也不分配对象；
+ * 当前号段消耗到{@link #REFILL_THRESHOLD}时由后台线程预取下一号段，访问redis与等待时钟均不在取号线程中发生。
+ * 号段加载只在{@link #loadLock}内进行，同一时刻至多一个加载；预取未及时完成时，由一个取号线程同步加载，
+ * 其余耗尽号段的线程等待切换完成，不会重复加载而浪费预借的秒数。
+ * 每个缓冲使用各自的预取线程(空闲时退出)，一个实体等待时钟追上时不影响其它实体的预取。
+ * 每秒至多一个号段，持续取号上限为每秒{@link #SEGMENT_SIZE}个，超出时取号阻塞至时钟追上。
+ *
+ * @since 1.0
+ */
+final class SegmentIdBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentIdBuffer.class);
+
+    /*
+     * 一个号段内可分配的序列数
+     */
+    static final long SEGMENT_SIZE = IdUtils.SEQUENCE_MASK + 1;
+
+    /*
+     * 当前号段消耗到该序列时触发预取
+     */
+    private static final long REFILL_THRESHOLD = SEGMENT_SIZE / 5;
+
+    private final SegmentLoader loader;
+
+    private final ThreadPoolExecutor refillExecutor;
+
+    private final AtomicReference<Segment> current = new AtomicReference<>();
+
+    private final AtomicReference<Segment> next = new AtomicReference<>();
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    /*
+     * 号段加载及切换锁，取号的快速路径不经过该锁
+     */
+    private final Object loadLock = new Object();
+
+    SegmentIdBuffer(final String name, SegmentLoader loader) {
+        this.loader = loader;
+        this.refillExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jaf-idg-refill-" + name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.refillExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    long nextId() {
+        for (;;) {
+            Segment segment = current.get();
+            if (segment == null) {
+                switchSegment(null);
+                continue;
+            }
+            long sequence = segment.cursor.getAndIncrement();
+            if (sequence < SEGMENT_SIZE) {
+                if (sequence == REFILL_THRESHOLD) {
+                    triggerRefill();
+                }
+                return IdUtils.generateId(segment.second, segment.counter, sequence);
+            }
+            switchSegment(segment);
+        }
+    }
+
+    private void switchSegment(Segment exhausted) {
+        synchronized (loadLock) {
+            if (current.get() != exhausted) {
+                //等待期间其它线程已完成切换
+                return;
+            }
+            Segment prepared = next.getAndSet(null);
+            if (prepared == null) {
+                //预取进行中时已在锁上等到其完成，此处仍为空说明未触发或加载失败，只能同步加载
+                prepared = loader.load();
+            }
+            current.set(prepared);
+        }
+        triggerRefill();
+    }
+
+    private void triggerRefill() {
+        if (next.get() != null || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        refillExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (loadLock) {
+                        if (next.get() == null) {
+                            next.set(loader.load());
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    LOG.error("预取id号段失败，将在号段耗尽时同步加载", e);
+                } finally {
+                    refilling.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * 号段加载器，实现需保证返回的(秒, 集群计数器)组合从未被分配过
+     */
+    interface SegmentLoader {
+        Segment load();
+    }
+
+    static final class Segment {
+        final long second;
+        final long counter;
+        final AtomicLong cursor = new AtomicLong();
+
+        Segment(long second, long counter) {
+            this.second = second;
+            this.counter = counter;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package cn.jcloud.jaf.rdb.id;
+
+/**
+ * 静态配置的worker id，由部署方保证各实例取值不同
+ *
+ * @since 1.0
+ */
+public class StaticWorkerIdCoordinator implements WorkerIdCoordinator {
+
+    private final long workerId;
+
+    public StaticWorkerIdCoordinator(long workerId) {
+        this.workerId = workerId;
+    }
+
+    @Override
+    public long acquire(String owner, long maxWorkerId, long nowSecond, long expireSecond) {
+        if (workerId < 0 || workerId > maxWorkerId) {
+            throw new IllegalArgumentException(
+                    String.format("worker id %d out of range [0, %d]", workerId, maxWorkerId));
+        }
+        return workerId;
+    }
+
+    @Override
+    public boolean renew(long workerId, String owner, long expireSecond) {
+        return true;
+    }
+
+    @Override
+    public void release(long workerId, String owner, long expireSecond) {
+        //nothing
+    }
+}
@@ -0,0 +1,33 @@
+package cn.jcloud.jaf.rdb.id;
+
+/**
+ * worker id协调器，为{@link WorkerIdLease}分配、续约及释放worker id
+ * 时间均以秒为单位，由调用方本地时钟给出，因此实例间时钟偏差需远小于租约时长
+ *
+ * @since 1.0
+ */
+public interface WorkerIdCoordinator {
+
+    /**
+     * 占用一个worker id，可占用的id为从未被占用、或原租约到期秒数小于nowSecond的id
+     *
+     * @param owner        占用者标识
+     * @param maxWorkerId  worker id上限(含)
+     * @param nowSecond    当前秒数
+     * @param expireSecond 租约到期秒数
+     * @return 占用到的worker id，没有可用id时返回-1
+     */
+    long acquire(String owner, long maxWorkerId, long nowSecond, long expireSecond);
+
+    /**
+     * 续约
+     *
+     * @return 是否仍由owner持有
+     */
+    boolean renew(long workerId, String owner, long expireSecond);
+
+    /**
+     * 释放，释放后该id在expireSecond之后才可被再次占用
+     */
+    void release(long workerId, String owner, long expireSecond);
+}
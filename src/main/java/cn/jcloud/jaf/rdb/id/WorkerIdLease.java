@@ -0,0 +1,192 @@
+package cn.jcloud.jaf.rdb.id;
+
+import cn.jcloud.jaf.common.util.IdUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * worker id租约
+ * 实例启动时通过{@link WorkerIdCoordinator}占用一个worker id并在后台定期续约，
+ * {@link DistributedIdentifierGenerator}以其代替redis集群计数器，取号完全在本地完成，id位布局不变。
+ * 生成器只使用不晚于租约到期秒数的时间，续约失败或超期未续约时拒绝取号，直至重新占用到新的id。
+ * 以名称{@value #BEAN_NAME}注册为bean即启用：
+ * <pre>
+ * &#64;Bean(name = WorkerIdLease.BEAN_NAME)
+ * public WorkerIdLease idgWorkerIdLease() {
+ *     return new WorkerIdLease(new JdbcWorkerIdCoordinator(jdbcTemplate()));
+ * }
+ * </pre>
+ *
+ * @since 1.0
+ */
+public class WorkerIdLease implements InitializingBean, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkerIdLease.class);
+
+    public static final String BEAN_NAME = "idgWorkerIdLease";
+
+    public static final long DEFAULT_LEASE_SECONDS = 60L;
+
+    private final WorkerIdCoordinator coordinator;
+
+    private final long leaseSeconds;
+
+    private final String owner;
+
+    private ScheduledExecutorService renewer;
+
+    private long workerId = -1L;
+
+    /*
+     * 当前租约到期秒数，小于0表示未持有
+     */
+    private volatile long expireSecond = -1L;
+
+    /*
+     * 已使用的最大秒数，释放时保留至该秒之后
+     */
+    private final AtomicLong maxIssuedSecond = new AtomicLong();
+
+    public WorkerIdLease(WorkerIdCoordinator coordinator) {
+        this(coordinator, DEFAULT_LEASE_SECONDS);
+    }
+
+    public WorkerIdLease(WorkerIdCoordinator coordinator, long leaseSeconds) {
+        if (leaseSeconds < 3) {
+            throw new IllegalArgumentException("leaseSeconds must be at least 3");
+        }
+        this.coordinator = coordinator;
+        this.leaseSeconds = leaseSeconds;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        start();
+    }
+
+    public synchronized void start() {
+        if (renewer != null) {
+            return;
+        }
+        acquire();
+        if (expireSecond < 0) {
+            throw new IllegalStateException("No worker id available from " + coordinator.getClass().getSimpleName());
+        }
+        renewer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "jaf-idg-lease");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = leaseSeconds / 3;
+        renewer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                renew();
+            }
+        }, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 取得可用于指定秒数的worker id
+     *
+     * @param second 生成id使用的秒数
+     * @return worker id
+     * @throws IllegalStateException 租约未持有或该秒数超出租约
+     */
+    long workerId(long second) {
+        long expire = this.expireSecond;
+        if (second > expire) {
+            throw new IllegalStateException(String.format(
+                    "Worker id lease not held for second %d (expires at %d)", second, expire));
+        }
+        long issued;
+        while (second > (issued = maxIssuedSecond.get())) {
+            if (maxIssuedSecond.compareAndSet(issued, second)) {
+                break;
+            }
+        }
+        return workerId;
+    }
+
+    public long getWorkerId() {
+        return expireSecond < 0 ? -1L : workerId;
+    }
+
+    public long getExpireSecond() {
+        return expireSecond;
+    }
+
+    private synchronized void acquire() {
+        long now = nowSecond();
+        long acquired;
+        try {
+            acquired = coordinator.acquire(owner, IdUtils.COUNTER_MASK, now, now + leaseSeconds);
+        } catch (RuntimeException e) {
+            LOG.error("占用worker id失败", e);
+            return;
+        }
+        if (acquired < 0) {
+            LOG.error("没有可用的worker id，上限{}", IdUtils.COUNTER_MASK);
+            return;
+        }
+        this.workerId = acquired;
+        this.expireSecond = now + leaseSeconds;
+        LOG.info("占用worker id {}，租约至{}", acquired, expireSecond);
+    }
+
+    private synchronized void renew() {
+        if (expireSecond < 0) {
+            //租约已丢失，重新占用
+            acquire();
+            return;
+        }
+        long expire = nowSecond() + leaseSeconds;
+        try {
+            if (coordinator.renew(workerId, owner, expire)) {
+                this.expireSecond = expire;
+                return;
+            }
+            LOG.error("worker id {}已被其它实例占用，停止使用", workerId);
+            this.expireSecond = -1L;
+        } catch (RuntimeException e) {
+            //保留原到期时间，到期前续约恢复则不受影响
+            LOG.warn("worker id {}续约失败，租约将于{}到期", workerId, expireSecond, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (renewer != null) {
+            renewer.shutdownNow();
+            renewer = null;
+        }
+        if (expireSecond < 0) {
+            return;
+        }
+        long expire = Math.max(nowSecond(), maxIssuedSecond.get());
+        this.expireSecond = -1L;
+        try {
+            coordinator.release(workerId, owner, expire);
+        } catch (RuntimeException e) {
+            LOG.warn("释放worker id {}失败，将于租约到期后自动释放", workerId, e);
+        }
+    }
+
+    private static long nowSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
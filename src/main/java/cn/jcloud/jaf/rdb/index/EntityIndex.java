@@ -0,0 +1,65 @@
+package cn.jcloud.jaf.rdb.index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * 编译期生成的实体索引，由{@link EntityIndexProcessor}在编译依赖本模块的工程时生成，
+ * 启动时据此注册实体，代替对整个包的classpath扫描
+ */
+public final class EntityIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityIndex.class);
+
+    public static final String INDEX_LOCATION = "META-INF/jaf-rdb-entities.idx";
+
+    static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private EntityIndex() {
+    }
+
+    /**
+     * 读取classpath中全部索引文件
+     *
+     * @param classLoader 类加载器
+     * @param basePackage 仅返回该包下的类
+     * @return 实体类名，不存在索引文件或索引中没有该包下的类时返回null，此时应退回classpath扫描
+     */
+    public static List<String> load(ClassLoader classLoader, String basePackage) {
+        String prefix = basePackage.endsWith(".") ? basePackage : basePackage + ".";
+        List<String> classNames = new ArrayList<>();
+        boolean found = false;
+        try {
+            Enumeration<URL> resources = classLoader.getResources(INDEX_LOCATION);
+            while (resources.hasMoreElements()) {
+                found = true;
+                URL url = resources.nextElement();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), CHARSET))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (line.startsWith(prefix) && !classNames.contains(line)) {
+                            classNames.add(line);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("读取实体索引失败，退回classpath扫描", e);
+            return null;
+        }
+        if (found && classNames.isEmpty()) {
+            LOG.info("实体索引中没有{}下的实体，退回classpath扫描", basePackage);
+        }
+        return classNames.isEmpty() ? null : classNames;
+    }
+}
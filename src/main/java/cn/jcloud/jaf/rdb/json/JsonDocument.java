@@ -0,0 +1,239 @@
+package cn.jcloud.jaf.rdb.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * JSON列的值
+ * 从数据库读取时只保存原始字节，调用{@link #read(Class)}或{@link #get(String, Class)}时才解析，未访问的大文档不产生解析开销；
+ * {@link #get(String, Class)}流式定位到路径所在的子树，只解析该子树。
+ * 值不可变，修改时应以{@link #of(Object)}创建新值并赋给实体属性；传入的对象在写入前不应再修改。
+ * 实体中声明该类型的属性即映射为JSON列，由{@link JsonUserType}读写，列类型可为MySQL JSON或TEXT。
+ */
+public final class JsonDocument implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static volatile ObjectMapper objectMapper = new ObjectMapper();
+
+    private volatile byte[] raw;
+
+    private final transient Object value;
+
+    /*
+     * 最近一次完整解析的结果
+     */
+    private transient volatile Object parsed;
+
+    private JsonDocument(byte[] raw, Object value) {
+        this.raw = raw;
+        this.value = value;
+    }
+
+    /**
+     * 以对象创建，序列化延迟到写入数据库或读取字节时
+     */
+    public static JsonDocument of(Object value) {
+        return new JsonDocument(null, value);
+    }
+
+    /**
+     * 以UTF-8编码的JSON字节创建，不校验格式
+     */
+    public static JsonDocument wrap(byte[] raw) {
+        return new JsonDocument(raw, null);
+    }
+
+    public static ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * 设置全局使用的ObjectMapper，应在读写任何文档前设置
+     */
+    public static void setObjectMapper(ObjectMapper objectMapper) {
+        JsonDocument.objectMapper = objectMapper;
+    }
+
+    /**
+     * UTF-8编码的JSON字节，不应修改返回的数组
+     */
+    public byte[] getBytes() {
+        byte[] bytes = raw;
+        if (bytes == null) {
+            try {
+                bytes = objectMapper.writeValueAsBytes(value);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("JSON序列化失败", e);
+            }
+            raw = bytes;
+        }
+        return bytes;
+    }
+
+    public InputStream openStream() {
+        return new ByteArrayInputStream(getBytes());
+    }
+
+    /**
+     * 写出JSON，尚未序列化时直接流式写出而不生成中间字节
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] bytes = raw;
+        if (bytes != null) {
+            out.write(bytes);
+        } else {
+            objectMapper.writeValue(out, value);
+        }
+    }
+
+    /**
+     * 以字符读取JSON，用于按字符绑定到语句；已有字节时按UTF-8解码读取，
+     * 尚未序列化时直接序列化为字符，不生成中间字节与字符串
+     */
+    public Reader openReader() {
+        byte[] bytes = raw;
+        if (bytes != null) {
+            return new InputStreamReader(new ByteArrayInputStream(bytes), JsonPaths.UTF_8);
+        }
+        CharBuffer buffer = new CharBuffer();
+        try {
+            objectMapper.writeValue(buffer, value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON序列化失败", e);
+        }
+        return buffer.reader();
+    }
+
+    /**
+     * 完整解析，同一类型的结果会被复用，不应修改返回的对象
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V read(Class<V> type) {
+        if (raw == null && type.isInstance(value)) {
+            return (V) value;
+        }
+        Object cached = parsed;
+        if (type.isInstance(cached)) {
+            return (V) cached;
+        }
+        try {
+            V result = objectMapper.readValue(getBytes(), type);
+            parsed = result;
+            return result;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON解析失败", e);
+        }
+    }
+
+    /**
+     * 按点分路径(如address.city、tags.0)读取子节点，只解析该路径所在的子树
+     *
+     * @return 路径不存在或值为null时返回null
+     */
+    public <V> V get(String path, Class<V> type) {
+        String[] segments = JsonPaths.segments(path);
+        try {
+            if (raw == null) {
+                JsonNode node = objectMapper.valueToTree(value);
+                for (String segment : segments) {
+                    if (node == null) {
+                        return null;
+                    }
+                    node = JsonPaths.isIndex(segment) && node.isArray()
+                            ? node.get(Integer.parseInt(segment)) : node.get(segment);
+                }
+                return node == null || node.isNull() ? null : objectMapper.treeToValue(node, type);
+            }
+            try (JsonParser parser = objectMapper.getFactory().createParser(raw)) {
+                parser.nextToken();
+                if (!seek(parser, segments) || parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                    return null;
+                }
+                return objectMapper.readValue(parser, type);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON解析失败", e);
+        }
+    }
+
+    /*
+     * 将parser移动到路径对应值的起始token，跳过途经的其它子树
+     */
+    private static boolean seek(JsonParser parser, String[] segments) throws IOException {
+        for (String segment : segments) {
+            JsonToken token = parser.getCurrentToken();
+            boolean found = false;
+            if (token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if (segment.equals(name)) {
+                        found = true;
+                        break;
+                    }
+                    parser.skipChildren();
+                }
+            } else if (token == JsonToken.START_ARRAY && JsonPaths.isIndex(segment)) {
+                int index = Integer.parseInt(segment);
+                for (int i = 0; parser.nextToken() != JsonToken.END_ARRAY; i++) {
+                    if (i == index) {
+                        found = true;
+                        break;
+                    }
+                    parser.skipChildren();
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getBytes();
+        out.defaultWriteObject();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof JsonDocument && Arrays.equals(getBytes(), ((JsonDocument) o).getBytes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(getBytes());
+    }
+
+    @Override
+    public String toString() {
+        return new String(getBytes(), JsonPaths.UTF_8);
+    }
+
+    /*
+     * 直接读取内部数组，避免toCharArray复制
+     */
+    private static final class CharBuffer extends CharArrayWriter {
+        private Reader reader() {
+            return new CharArrayReader(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package cn.jcloud.jaf.rdb.json;
+
+import cn.jcloud.jaf.common.constant.ErrorCode;
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * JSON路径条件
+ * ListParam条件字段形如"json属性.路径"(如profile.address.city、profile.tags.0)时，按MySQL JSON_EXTRACT查询；
+ * 整数类型按有符号整数比较，小数按DECIMAL比较，其余类型按去引号后的字符串比较。
+ * 使用的函数由{@link cn.jcloud.jaf.rdb.config.Utf8mb4MySQL5InnoDBDialect}注册。
+ * 本类不依赖Jackson，可在未引入Jackson时加载。
+ */
+public final class JsonPaths {
+
+    public static final String TEXT_FUNCTION = "jaf_json_text";
+
+    public static final String LONG_FUNCTION = "jaf_json_long";
+
+    public static final String DECIMAL_FUNCTION = "jaf_json_decimal";
+
+    /*
+     * 函数对应的SQL模板，?1为JSON列，?2为路径；JSON路径上的生成列须使用相同表达式才能被优化器匹配
+     */
+    public static final String TEXT_TEMPLATE = "json_unquote(json_extract(?1, ?2))";
+
+    public static final String LONG_TEMPLATE = "cast(json_extract(?1, ?2) as signed)";
+
+    public static final String DECIMAL_TEMPLATE = "cast(json_extract(?1, ?2) as decimal(65, 30))";
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static final String JSON_DOCUMENT_CLASS_NAME = "cn.jcloud.jaf.rdb.json.JsonDocument";
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+
+    private static final Pattern INDEX = Pattern.compile("\\d+");
+
+    private static final ConversionService CONVERSION_SERVICE = new DefaultConversionService();
+
+    private JsonPaths() {
+    }
+
+    /**
+     * 是否为{@link JsonDocument}类型，按类名判断以免加载Jackson
+     */
+    public static boolean isJsonType(Class<?> type) {
+        return type != null && JSON_DOCUMENT_CLASS_NAME.equals(type.getName());
+    }
+
+    /**
+     * 将点分路径转为MySQL JSON路径，如tags.0.name转为$.tags[0].name
+     */
+    public static String toJsonPath(String path) {
+        StringBuilder sb = new StringBuilder(path.length() + 4).append('$');
+        for (String segment : segments(path)) {
+            if (INDEX.matcher(segment).matches()) {
+                sb.append('[').append(segment).append(']');
+            } else {
+                sb.append('.').append(segment);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String[] segments(String path) {
+        String[] segments = path.split("\\.", -1);
+        for (String segment : segments) {
+            if (!NAME.matcher(segment).matches() && !INDEX.matcher(segment).matches()) {
+                throw JafI18NException.of("非法的JSON路径" + path, ErrorCode.INVALID_QUERY);
+            }
+        }
+        return segments;
+    }
+
+    static boolean isIndex(String segment) {
+        return INDEX.matcher(segment).matches();
+    }
+
+    /**
+     * 条件值类型对应的SQL比较类型
+     */
+    public static Class<?> sqlType(Class<?> valueType) {
+        if (valueType == Long.class || valueType == Integer.class || valueType == Short.class
+                || valueType == Byte.class) {
+            return Long.class;
+        }
+        if (Number.class.isAssignableFrom(valueType)) {
+            return BigDecimal.class;
+        }
+        return String.class;
+    }
+
+    public static String functionName(Class<?> sqlType) {
+        if (sqlType == Long.class) {
+            return LONG_FUNCTION;
+        }
+        if (sqlType == BigDecimal.class) {
+            return DECIMAL_FUNCTION;
+        }
+        return TEXT_FUNCTION;
+    }
+
+    /**
+     * SQL比较类型对应的函数模板
+     */
+    public static String template(Class<?> sqlType) {
+        if (sqlType == Long.class) {
+            return LONG_TEMPLATE;
+        }
+        if (sqlType == BigDecimal.class) {
+            return DECIMAL_TEMPLATE;
+        }
+        return TEXT_TEMPLATE;
+    }
+
+    public static Object convert(Object value, Class<?> sqlType) {
+        if (value == null || sqlType.isInstance(value)) {
+            return value;
+        }
+        return CONVERSION_SERVICE.convert(value, sqlType);
+    }
+
+    public static List<Object> convertAll(List<?> values, Class<?> sqlType) {
+        List<Object> converted = new ArrayList<>(values.size());
+        for (Object value : values) {
+            converted.add(convert(value, sqlType));
+        }
+        return converted;
+    }
+}
@@ -0,0 +1,19 @@
+package cn.jcloud.jaf.rdb.json;
+
+import org.hibernate.annotations.TypeDef;
+
+import javax.persistence.MappedSuperclass;
+
+/**
+ * 注册JSON类型，由{@link cn.jcloud.jaf.rdb.config.AbstractRDBConfigurerAdapter}加入持久化单元；
+ * 实体中{@link JsonDocument}类型的属性默认使用{@link JsonUserType}
+ */
+@MappedSuperclass
+@TypeDef(name = JsonUserType.NAME, typeClass = JsonUserType.class, defaultForType = JsonDocument.class)
+public abstract class JsonTypeDefinitions {
+
+    public static final String CLASS_NAME = "cn.jcloud.jaf.rdb.json.JsonTypeDefinitions";
+
+    private JsonTypeDefinitions() {
+    }
+}
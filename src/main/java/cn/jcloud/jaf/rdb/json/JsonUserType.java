@@ -0,0 +1,85 @@
+package cn.jcloud.jaf.rdb.json;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * {@link JsonDocument}的hibernate类型
+ * 读取时只取原始字节，不解析；{@link JsonDocument}不可变，脏检查在同一实例时无需比较内容。
+ * 写入时以字符流绑定，使MySQL JSON列按utf8mb4而非二进制接收；尚未序列化的值直接序列化为字符，不生成中间字节与字符串。
+ */
+public class JsonUserType implements UserType {
+
+    public static final String NAME = "jaf_json";
+
+    private static final int[] SQL_TYPES = {Types.LONGVARCHAR};
+
+    @Override
+    public int[] sqlTypes() {
+        return SQL_TYPES;
+    }
+
+    @Override
+    public Class returnedClass() {
+        return JsonDocument.class;
+    }
+
+    @Override
+    public boolean equals(Object x, Object y) throws HibernateException {
+        return x == y || (x != null && x.equals(y));
+    }
+
+    @Override
+    public int hashCode(Object x) throws HibernateException {
+        return x.hashCode();
+    }
+
+    @Override
+    public Object nullSafeGet(ResultSet rs, String[] names, SessionImplementor session, Object owner)
+            throws HibernateException, SQLException {
+        byte[] bytes = rs.getBytes(names[0]);
+        return bytes == null ? null : JsonDocument.wrap(bytes);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Object value, int index, SessionImplementor session)
+            throws HibernateException, SQLException {
+        if (value == null) {
+            st.setNull(index, Types.LONGVARCHAR);
+        } else {
+            st.setCharacterStream(index, ((JsonDocument) value).openReader());
+        }
+    }
+
+    @Override
+    public Object deepCopy(Object value) throws HibernateException {
+        return value;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return false;
+    }
+
+    @Override
+    public Serializable disassemble(Object value) throws HibernateException {
+        return value == null ? null : ((JsonDocument) value).getBytes();
+    }
+
+    @Override
+    public Object assemble(Serializable cached, Object owner) throws HibernateException {
+        return cached == null ? null : JsonDocument.wrap((byte[]) cached);
+    }
+
+    @Override
+    public Object replace(Object original, Object target, Object owner) throws HibernateException {
+        return original;
+    }
+}
@@ -0,0 +1,77 @@
+package cn.jcloud.jaf.rdb.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时直方图，固定分桶，记录无锁且不分配对象；分位数取所在分桶的上界
+ */
+public class LatencyHistogram {
+
+    /*
+     * 分桶上界，单位微秒，最后一个分桶无上界
+     */
+    private static final long[] BOUNDS = {100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000,
+            250000, 500000, 1000000, 2500000, 5000000, 10000000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        int index = 0;
+        while (index < BOUNDS.length && micros > BOUNDS[index]) {
+            index++;
+        }
+        buckets.incrementAndGet(index);
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @param percentile 分位，取值(0, 1]
+     * @return 分位耗时上界，单位微秒，无记录时返回0
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += buckets.get(i);
+            if (seen >= threshold) {
+                return BOUNDS[i];
+            }
+        }
+        return maxMicros.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        long total = count.get();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total);
+        snapshot.put("meanMicros", total == 0 ? 0 : totalMicros.get() / total);
+        snapshot.put("p50Micros", getPercentileMicros(0.5));
+        snapshot.put("p95Micros", getPercentileMicros(0.95));
+        snapshot.put("p99Micros", getPercentileMicros(0.99));
+        snapshot.put("maxMicros", maxMicros.get());
+        return snapshot;
+    }
+}
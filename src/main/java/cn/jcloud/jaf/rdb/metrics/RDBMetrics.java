@@ -0,0 +1,184 @@
+package cn.jcloud.jaf.rdb.metrics;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 关系型数据库层指标
+ * 1.各实体各操作(list/queryList/getCount等)耗时直方图，以实体全限定类名区分
+ * 2.Druid连接池饱和度及等待情况
+ * 3.id生成器取号量、redis计数刷新耗时及时钟回退次数；取号量不逐个计数，同步取号按秒汇总，号段模式按号段计入分配量
+ * 4.慢查询按采样率记录日志，日志中仅包含查询形态，不包含参数值
+ */
+public final class RDBMetrics {
+
+    private static final Logger SLOW_QUERY_LOG = LoggerFactory.getLogger("cn.jcloud.jaf.rdb.SlowQuery");
+
+    private static final RDBMetrics INSTANCE = new RDBMetrics();
+
+    public static final long DEFAULT_SLOW_QUERY_MILLIS = 1000L;
+
+    private final ConcurrentMap<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, DruidDataSource> dataSources = new ConcurrentHashMap<>();
+
+    private final AtomicLong idGenerated = new AtomicLong();
+
+    private final AtomicLong idSegmentsLoaded = new AtomicLong();
+
+    private final AtomicLong idClockBackwards = new AtomicLong();
+
+    private final LatencyHistogram idCounterRefresh = new LatencyHistogram();
+
+    private final AtomicLong slowQueries = new AtomicLong();
+
+    private final Random random = new Random();
+
+    private volatile long slowQueryNanos = DEFAULT_SLOW_QUERY_MILLIS * 1000000L;
+
+    private volatile double slowQuerySampleRate = 1.0;
+
+    private RDBMetrics() {
+    }
+
+    public static RDBMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录一次操作耗时
+     *
+     * @param domainType 实体类型
+     * @param operation  操作名
+     * @param startNanos 开始时间，{@link System#nanoTime()}
+     * @return 耗时，单位纳秒
+     */
+    public long recordOperation(Class<?> domainType, String operation, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        histogram(domainType.getName() + "." + operation).record(elapsed);
+        return elapsed;
+    }
+
+    public boolean isSlow(long elapsedNanos) {
+        return elapsedNanos >= slowQueryNanos;
+    }
+
+    /**
+     * 记录慢查询，按采样率输出日志
+     *
+     * @param shape 查询形态，不包含参数值
+     */
+    public void slowQuery(Class<?> domainType, String operation, long elapsedNanos, String shape) {
+        slowQueries.incrementAndGet();
+        if (slowQuerySampleRate >= 1.0 || random.nextDouble() < slowQuerySampleRate) {
+            SLOW_QUERY_LOG.warn("慢查询 {}.{} 耗时{}ms 形态[{}]", domainType.getSimpleName(), operation,
+                    elapsedNanos / 1000000, shape);
+        }
+    }
+
+    private LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = operations.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = operations.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public void registerDataSource(String name, DruidDataSource dataSource) {
+        dataSources.put(name, dataSource);
+    }
+
+    /**
+     * 计入取号量，由生成器汇总后调用，不应逐个id调用
+     */
+    public void idGenerated(long count) {
+        idGenerated.addAndGet(count);
+    }
+
+    /**
+     * 加载号段，号段内的序列全部计入取号量
+     */
+    public void idSegmentLoaded(long size) {
+        idSegmentsLoaded.incrementAndGet();
+        idGenerated.addAndGet(size);
+    }
+
+    public void idClockBackwards() {
+        idClockBackwards.incrementAndGet();
+    }
+
+    public void idCounterRefreshed(long startNanos) {
+        idCounterRefresh.record(System.nanoTime() - startNanos);
+    }
+
+    public long getSlowQueryMillis() {
+        return slowQueryNanos / 1000000L;
+    }
+
+    public void setSlowQueryMillis(long slowQueryMillis) {
+        this.slowQueryNanos = slowQueryMillis * 1000000L;
+    }
+
+    public double getSlowQuerySampleRate() {
+        return slowQuerySampleRate;
+    }
+
+    /**
+     * @param slowQuerySampleRate 慢查询日志采样率，取值[0, 1]
+     */
+    public void setSlowQuerySampleRate(double slowQuerySampleRate) {
+        this.slowQuerySampleRate = slowQuerySampleRate;
+    }
+
+    /**
+     * 指标快照，可直接序列化为json供管理接口输出
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+
+        Map<String, Object> operationSnapshot = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : operations.entrySet()) {
+            operationSnapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        snapshot.put("operations", operationSnapshot);
+        snapshot.put("slowQueries", slowQueries.get());
+
+        Map<String, Object> poolSnapshot = new TreeMap<>();
+        for (Map.Entry<String, DruidDataSource> entry : dataSources.entrySet()) {
+            DruidDataSource dataSource = entry.getValue();
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("active", dataSource.getActiveCount());
+            pool.put("idle", dataSource.getPoolingCount());
+            pool.put("maxActive", dataSource.getMaxActive());
+            pool.put("saturation", dataSource.getMaxActive() == 0
+                    ? 0 : (double) dataSource.getActiveCount() / dataSource.getMaxActive());
+            pool.put("waitThreads", dataSource.getWaitThreadCount());
+            pool.put("waitCount", dataSource.getNotEmptyWaitCount());
+            pool.put("waitMillis", dataSource.getNotEmptyWaitMillis());
+            pool.put("createErrors", dataSource.getCreateErrorCount());
+            poolSnapshot.put(entry.getKey(), pool);
+        }
+        snapshot.put("pools", poolSnapshot);
+
+        Map<String, Object> idSnapshot = new LinkedHashMap<>();
+        idSnapshot.put("generated", idGenerated.get());
+        idSnapshot.put("segmentsLoaded", idSegmentsLoaded.get());
+        idSnapshot.put("clockBackwards", idClockBackwards.get());
+        idSnapshot.put("counterRefresh", idCounterRefresh.snapshot());
+        snapshot.put("idGenerator", idSnapshot);
+        return snapshot;
+    }
+}
@@ -0,0 +1,392 @@
+package cn.jcloud.jaf.rdb.shard;
+
+import cn.jcloud.jaf.common.constant.ErrorCode;
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import org.springframework.beans.BeanUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.ListenableFutureTask;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分片路由
+ * 当前线程的分片由{@link #enter(int)}设置，{@link cn.jcloud.jaf.rdb.datasource.ShardingDataSource}在事务的第一条语句执行时
+ * 由{@link #connectionShard()}选择分片连接，此后该事务内的语句都在该分片上执行，因此一个事务只能访问一个分片。
+ * 进入的分片及物理连接所在的分片都绑定到事务，二者不一致或跨分片时抛出异常。
+ * 分片数由rdb.properties中的shard.names确定，为1时不分片。
+ */
+public final class ShardRouter {
+
+    /**
+     * 按分片键取模，数值取绝对值取模，其余类型按hashCode取模
+     */
+    public static final ShardStrategy MODULO = new ShardStrategy() {
+        @Override
+        public int shard(Object keyValue, int shardCount) {
+            long value = keyValue instanceof Number ? ((Number) keyValue).longValue() : keyValue.hashCode();
+            return (int) ((value % shardCount + shardCount) % shardCount);
+        }
+    };
+
+    private static final ShardRouter INSTANCE = new ShardRouter();
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private static final KeyAccessor UNSHARDED = new KeyAccessor(null, null);
+
+    public static final long FAN_OUT_SUBMIT_TIMEOUT_SECONDS = 30L;
+
+    /*
+     * 不使用CallerRunsPolicy：调用线程通常处于事务中，在其上执行分片任务会将调用方事务绑定到该分片
+     */
+    private static final RejectedExecutionHandler WAIT_FOR_SPACE = new RejectedExecutionHandler() {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            try {
+                if (!pool.isShutdown() && pool.getQueue().offer(r, FAN_OUT_SUBMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new RejectedExecutionException("分片线程池已满");
+        }
+    };
+
+    private final ConcurrentMap<Class<?>, KeyAccessor> accessors = new ConcurrentHashMap<>();
+
+    private volatile int shardCount = 1;
+
+    private volatile ShardStrategy strategy = MODULO;
+
+    private volatile ThreadPoolExecutor executor;
+
+    private volatile int fanOutThreads;
+
+    private ShardRouter() {
+    }
+
+    public static ShardRouter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 当前线程所在分片，未设置时为null，即默认分片
+     */
+    public static Integer currentShard() {
+        return CURRENT.get();
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = Math.max(1, shardCount);
+    }
+
+    public int getFanOutThreads() {
+        return fanOutThreads;
+    }
+
+    /**
+     * 设置跨分片查询线程数，不大于0时为max(分片数, CPU数)*2；关闭当前线程池，已提交的任务继续执行
+     */
+    public synchronized void setFanOutThreads(int fanOutThreads) {
+        this.fanOutThreads = fanOutThreads;
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    public void setStrategy(ShardStrategy strategy) {
+        this.strategy = strategy == null ? MODULO : strategy;
+    }
+
+    public boolean isSharded(Class<?> domainType) {
+        return shardCount > 1 && accessor(domainType) != UNSHARDED;
+    }
+
+    /**
+     * 分片键属性名，未分片的实体返回null
+     */
+    public String getShardKey(Class<?> domainType) {
+        return accessor(domainType).name;
+    }
+
+    public int shardOf(Object keyValue) {
+        if (keyValue == null) {
+            throw JafI18NException.of("分片键不能为空", ErrorCode.INVALID_ARGUMENT);
+        }
+        return strategy.shard(keyValue, shardCount);
+    }
+
+    public int shardOfEntity(Object entity) {
+        KeyAccessor accessor = accessor(entity.getClass());
+        if (accessor == UNSHARDED) {
+            return 0;
+        }
+        return shardOf(ReflectionUtils.invokeMethod(accessor.getter, entity));
+    }
+
+    /**
+     * 进入分片，须与{@link #exit(Integer)}成对调用
+     *
+     * @return 之前所在分片，用于{@link #exit(Integer)}恢复
+     */
+    public Integer enter(int shard) {
+        bind(shard);
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        return previous;
+    }
+
+    /**
+     * 选择物理连接所在分片，由分片数据源在获取连接时调用：
+     * 依次为当前线程的分片、当前事务已绑定的分片、默认分片；事务内同时将其绑定到事务
+     */
+    public int connectionShard() {
+        Integer shard = CURRENT.get();
+        if (shard == null) {
+            Integer bound = TransactionSynchronizationManager.isSynchronizationActive()
+                    ? (Integer) TransactionSynchronizationManager.getResource(this) : null;
+            shard = bound == null ? 0 : bound;
+        }
+        bind(shard);
+        return shard;
+    }
+
+    private void bind(int shard) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Integer bound = (Integer) TransactionSynchronizationManager.getResource(this);
+        if (bound == null) {
+            TransactionSynchronizationManager.bindResource(this, shard);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ShardRouter.this);
+                }
+            });
+        } else if (bound != shard) {
+            throw JafI18NException.of("同一事务不能访问多个分片，当前事务已绑定分片" + bound,
+                    ErrorCode.INVALID_ARGUMENT);
+        }
+    }
+
+    public void exit(Integer previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * 在全部分片上并行执行，每个分片在独立线程中执行且不参与调用方事务，回调中应使用独立的EntityManager。
+     * 分片任务始终在分片线程池中执行，不在调用线程执行，避免调用方事务被绑定到某个分片；
+     * 线程池饱和时调用线程至多等待{@link #FAN_OUT_SUBMIT_TIMEOUT_SECONDS}秒，仍无空位时抛出RejectedExecutionException
+     *
+     * @return 按分片下标排列的结果
+     */
+    public <R> List<R> fanOut(final ShardCallback<R> callback) {
+        int count = shardCount;
+        List<Future<R>> futures = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                futures.add(executor().submit(inShard(i, callback)));
+            }
+        } catch (RejectedExecutionException e) {
+            cancel(futures);
+            throw e;
+        }
+        List<R> results = new ArrayList<>(count);
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(futures);
+            throw new IllegalStateException("分片查询被中断", e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return results;
+    }
+
+    /**
+     * {@link #fanOut(ShardCallback)}的异步版本，不占用调用线程等待各分片结果；线程池饱和时同样等待空位，超时后以拒绝异常结束。
+     * 任一分片失败时取消其余分片并以该异常结束
+     *
+     * @return 按分片下标排列的结果
+     */
+    public <R> ListenableFuture<List<R>> fanOutAsync(final ShardCallback<R> callback) {
+        int count = shardCount;
+        final SettableListenableFuture<List<R>> result = new SettableListenableFuture<>();
+        final List<ListenableFutureTask<R>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new ListenableFutureTask<>(inShard(i, callback)));
+        }
+        final AtomicInteger pending = new AtomicInteger(count);
+        ListenableFutureCallback<R> join = new ListenableFutureCallback<R>() {
+            @Override
+            public void onSuccess(R value) {
+                if (pending.decrementAndGet() != 0) {
+                    return;
+                }
+                List<R> results = new ArrayList<>(tasks.size());
+                try {
+                    for (ListenableFutureTask<R> task : tasks) {
+                        results.add(task.get());
+                    }
+                    result.set(results);
+                } catch (InterruptedException | ExecutionException e) {
+                    //全部已完成，不会发生
+                    result.setException(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                if (result.setException(ex)) {
+                    cancel(tasks);
+                }
+            }
+        };
+        for (ListenableFutureTask<R> task : tasks) {
+            task.addCallback(join);
+        }
+        try {
+            for (ListenableFutureTask<R> task : tasks) {
+                executor().execute(task);
+            }
+        } catch (RejectedExecutionException e) {
+            if (result.setException(e)) {
+                cancel(tasks);
+            }
+        }
+        return result;
+    }
+
+    private static <R> Callable<R> inShard(final int shard, final ShardCallback<R> callback) {
+        return new Callable<R>() {
+            @Override
+            public R call() {
+                Integer previous = CURRENT.get();
+                CURRENT.set(shard);
+                try {
+                    return callback.doInShard(shard);
+                } finally {
+                    if (previous == null) {
+                        CURRENT.remove();
+                    } else {
+                        CURRENT.set(previous);
+                    }
+                }
+            }
+        };
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private ThreadPoolExecutor executor() {
+        if (executor == null) {
+            synchronized (this) {
+                if (executor == null) {
+                    int threads = fanOutThreads > 0 ? fanOutThreads
+                            : Math.max(shardCount, Runtime.getRuntime().availableProcessors()) * 2;
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(threads * 8), new ThreadFactory() {
+                        private final AtomicInteger index = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "jaf-rdb-shard-" + index.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, WAIT_FOR_SPACE);
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private KeyAccessor accessor(Class<?> domainType) {
+        KeyAccessor accessor = accessors.get(domainType);
+        if (accessor == null) {
+            accessor = createAccessor(domainType);
+            accessors.putIfAbsent(domainType, accessor);
+        }
+        return accessor;
+    }
+
+    private static KeyAccessor createAccessor(Class<?> domainType) {
+        Class<?> type = domainType;
+        Sharded sharded = null;
+        while (type != null && sharded == null) {
+            sharded = type.getAnnotation(Sharded.class);
+            type = type.getSuperclass();
+        }
+        if (sharded == null) {
+            return UNSHARDED;
+        }
+        PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(domainType, sharded.key());
+        if (descriptor == null || descriptor.getReadMethod() == null) {
+            throw JafI18NException.of(domainType.getCanonicalName() + "不存在分片键属性" + sharded.key(),
+                    ErrorCode.INVALID_ARGUMENT);
+        }
+        return new KeyAccessor(sharded.key(), descriptor.getReadMethod());
+    }
+
+    /**
+     * 分片回调
+     */
+    public interface ShardCallback<R> {
+        R doInShard(int shard);
+    }
+
+    private static final class KeyAccessor {
+        private final String name;
+        private final Method getter;
+
+        private KeyAccessor(String name, Method getter) {
+            this.name = name;
+            this.getter = getter;
+        }
+    }
+}
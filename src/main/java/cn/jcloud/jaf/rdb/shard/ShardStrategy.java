@@ -0,0 +1,14 @@
+package cn.jcloud.jaf.rdb.shard;
+
+/**
+ * 分片键到分片下标的映射
+ */
+public interface ShardStrategy {
+
+    /**
+     * @param keyValue   分片键值，非null
+     * @param shardCount 分片数
+     * @return 分片下标，取值[0, shardCount)
+     */
+    int shard(Object keyValue, int shardCount);
+}
@@ -0,0 +1,23 @@
+package cn.jcloud.jaf.rdb.shard;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标识实体按分片存储，未标识的实体只存于默认分片(下标0)
+ *
+ * @see ShardRouter
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Sharded {
+
+    /**
+     * 分片键属性名，默认为主键；使用主键以外的属性(如租户)时，按主键的单条查询需查询全部分片
+     */
+    String key() default "id";
+}
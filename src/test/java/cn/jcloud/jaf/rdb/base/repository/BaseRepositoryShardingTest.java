@@ -0,0 +1,350 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import cn.jcloud.jaf.common.query.ListParam;
+import cn.jcloud.jaf.rdb.datasource.ShardingDataSource;
+import cn.jcloud.jaf.rdb.shard.ShardRouter;
+import cn.jcloud.jaf.rdb.support.H2Support;
+import cn.jcloud.jaf.rdb.support.TestItem;
+import cn.jcloud.jaf.rdb.support.TestShardedItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BaseRepositoryShardingTest {
+
+    private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+
+    private GenericApplicationContext context;
+
+    private List<DriverManagerDataSource> shards;
+
+    private EntityManagerFactory emf;
+
+    private EntityManager em;
+
+    private TransactionTemplate transactionTemplate;
+
+    private BaseRepositoryImpl<TestShardedItem, Long> shardedRepository;
+
+    private BaseRepositoryImpl<TestItem, Long> itemRepository;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        context = H2Support.initSpringContext();
+        int sequence = DATABASE_SEQUENCE.incrementAndGet();
+        shards = Arrays.asList(H2Support.dataSource("shard_a" + sequence), H2Support.dataSource("shard_b" + sequence));
+        for (DriverManagerDataSource shard : shards) {
+            H2Support.createEntityManagerFactory(shard, "create").close();
+        }
+        ShardRouter.getInstance().setShardCount(shards.size());
+        emf = H2Support.createEntityManagerFactory(new ShardingDataSource(shards), "none");
+        em = SharedEntityManagerCreator.createSharedEntityManager(emf);
+        transactionTemplate = new TransactionTemplate(new JpaTransactionManager(emf));
+        EntityManager metadataEm = emf.createEntityManager();
+        try {
+            shardedRepository = new BaseRepositoryImpl<>((JpaEntityInformation<TestShardedItem, Long>)
+                    JpaEntityInformationSupport.getEntityInformation(TestShardedItem.class, metadataEm), em);
+            itemRepository = new BaseRepositoryImpl<>((JpaEntityInformation<TestItem, Long>)
+                    JpaEntityInformationSupport.getEntityInformation(TestItem.class, metadataEm), em);
+        } finally {
+            metadataEm.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ShardRouter.getInstance().setShardCount(1);
+        emf.close();
+        context.close();
+    }
+
+    @Test
+    public void savesOnOwningShardAndFindsById() {
+        List<TestShardedItem> saved = saveItems(4);
+        for (int shard = 0; shard < shards.size(); shard++) {
+            List<Long> tenants = new JdbcTemplate(shards.get(shard))
+                    .queryForList("select tenant from test_sharded_item", Long.class);
+            assertEquals(2, tenants.size());
+            for (Long tenant : tenants) {
+                assertEquals(shard, tenant % shards.size());
+            }
+        }
+        TestShardedItem found = shardedRepository.findOne(saved.get(3).getId());
+        assertNotNull(found);
+        assertEquals(Long.valueOf(3L), found.getTenant());
+    }
+
+    @Test
+    public void rejectsSecondShardInTransaction() {
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    shardedRepository.save(item(0L));
+                    shardedRepository.save(item(1L));
+                }
+            });
+            fail("跨分片事务应抛出异常");
+        } catch (JafI18NException e) {
+            //expected
+        }
+        assertEquals(0, countRows(0) + countRows(1));
+    }
+
+    @Test
+    public void rejectsShardOtherThanPhysicalConnection() {
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    //未经路由的语句在默认分片上取得连接
+                    em.createNativeQuery("select count(*) from test_item").getSingleResult();
+                    shardedRepository.save(item(1L));
+                }
+            });
+            fail("连接所在分片与路由分片不一致时应抛出异常");
+        } catch (JafI18NException e) {
+            //expected
+        }
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    shardedRepository.save(item(1L));
+                    itemRepository.findAll();
+                }
+            });
+            fail("未分片实体的操作不能在其它分片的事务中执行");
+        } catch (JafI18NException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void rejectsUnroutedQueriesOnShardedEntity() {
+        try {
+            shardedRepository.findAll();
+            fail("分片实体不支持全表查询");
+        } catch (JafI18NException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void rejectsFanOutFindInWriteTransaction() {
+        final List<TestShardedItem> saved = saveItems(2);
+        try {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    shardedRepository.findOne(saved.get(1).getId());
+                }
+            });
+            fail("读写事务中不能跨分片按主键查询");
+        } catch (JafI18NException e) {
+            //expected
+        }
+        TransactionTemplate readOnly = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        readOnly.setReadOnly(true);
+        assertTrue(readOnly.execute(new TransactionCallback<Boolean>() {
+            @Override
+            public Boolean doInTransaction(TransactionStatus status) {
+                return shardedRepository.exists(saved.get(1).getId());
+            }
+        }));
+    }
+
+    @Test
+    public void fanOutInTransactionWaitsForSaturatedPool() throws Exception {
+        saveItems(4);
+        ShardRouter router = ShardRouter.getInstance();
+        router.setFanOutThreads(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            //1个线程、8个队列空位：占满1个执行中与7个排队，跨分片查询的第二个分片任务须等待空位
+            List<ListenableFuture<List<Object>>> blockers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                blockers.add(router.fanOutAsync(new ShardRouter.ShardCallback<Object>() {
+                    @Override
+                    public Object doInShard(int shard) {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            Thread releaser = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(300L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    release.countDown();
+                }
+            });
+            releaser.start();
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    assertNotNull(shardedRepository.list(H2Support.<TestShardedItem>listParam(0, 10, false, null)));
+                    //分片任务未在调用线程执行，事务未绑定任何分片
+                    shardedRepository.save(item(0L));
+                }
+            });
+            for (ListenableFuture<List<Object>> blocker : blockers) {
+                blocker.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(3, countRows(0));
+        } finally {
+            release.countDown();
+            router.setFanOutThreads(0);
+        }
+    }
+
+    @Test
+    public void listsShardsAsyncWithoutAsyncPermits() throws Exception {
+        saveItems(4);
+        ListParamAsyncExecutor asyncExecutor = ListParamJpaUtil.getAsyncExecutor();
+        asyncExecutor.setMaxConcurrency(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            //占用唯一的并发数
+            ListenableFuture<Object> blocker = asyncExecutor.submit(emf,
+                    new ListParamAsyncExecutor.EntityManagerCallback<Object>() {
+                        @Override
+                        public Object doInEntityManager(EntityManager em) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return null;
+                        }
+                    });
+            ListParam<TestShardedItem> listParam = H2Support.listParam(1, 2, true,
+                    new Sort(Sort.Direction.ASC, "score"));
+            assertNotNull(ListParamJpaUtil.listAsync(emf, listParam, TestShardedItem.class).get(10, TimeUnit.SECONDS));
+            release.countDown();
+            blocker.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            asyncExecutor.setMaxConcurrency(ListParamAsyncExecutor.DEFAULT_MAX_CONCURRENCY);
+        }
+    }
+
+    @Test
+    public void failsAsyncFanOutWithShardException() throws Exception {
+        ListenableFuture<List<Integer>> future = ShardRouter.getInstance().fanOutAsync(
+                new ShardRouter.ShardCallback<Integer>() {
+                    @Override
+                    public Integer doInShard(int shard) {
+                        if (shard == 1) {
+                            throw new IllegalStateException("shard " + shard);
+                        }
+                        return shard;
+                    }
+                });
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("分片失败时应以该异常结束");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(Arrays.asList(0, 1), ShardRouter.getInstance().fanOutAsync(
+                new ShardRouter.ShardCallback<Integer>() {
+                    @Override
+                    public Integer doInShard(int shard) {
+                        return shard;
+                    }
+                }).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void mergesShardsBySortWithOffsetAndLimit() {
+        List<List<TestShardedItem>> ascending = Arrays.asList(
+                Arrays.asList(item(null), item(0L), item(2L), item(4L), item(6L), item(8L)),
+                Arrays.asList(item(1L), item(3L), item(5L), item(7L), item(9L)));
+        Sort asc = new Sort(Sort.Direction.ASC, "score");
+        assertEquals(Arrays.asList(null, 0L, 1L), scores(ShardedListQuery.merge(ascending, asc, 0, 3)));
+        assertEquals(Arrays.asList(2L, 3L, 4L, 5L), scores(ShardedListQuery.merge(ascending, asc, 3, 4)));
+        assertEquals(Arrays.asList(8L, 9L), scores(ShardedListQuery.merge(ascending, asc, 9, 4)));
+        assertTrue(ShardedListQuery.merge(ascending, asc, 11, 4).isEmpty());
+
+        List<List<TestShardedItem>> descending = Arrays.asList(
+                Arrays.asList(item(8L), item(6L), item(4L), item(2L), item(0L), item(null)),
+                Arrays.asList(item(9L), item(7L), item(5L), item(3L), item(1L)));
+        Sort desc = new Sort(Sort.Direction.DESC, "score");
+        assertEquals(Arrays.asList(6L, 5L, 4L, 3L), scores(ShardedListQuery.merge(descending, desc, 3, 4)));
+        assertEquals(Arrays.asList(0L, null), scores(ShardedListQuery.merge(descending, desc, 9, 4)));
+    }
+
+    private List<TestShardedItem> saveItems(final int count) {
+        List<TestShardedItem> saved = new ArrayList<>(count);
+        for (long i = 0; i < count; i++) {
+            final TestShardedItem item = item(i);
+            saved.add(transactionTemplate.execute(new TransactionCallback<TestShardedItem>() {
+                @Override
+                public TestShardedItem doInTransaction(TransactionStatus status) {
+                    return shardedRepository.save(item);
+                }
+            }));
+        }
+        assertTrue(saved.get(0).getId() != null);
+        return saved;
+    }
+
+    private int countRows(int shard) {
+        return new JdbcTemplate(shards.get(shard)).queryForObject("select count(*) from test_sharded_item",
+                Integer.class);
+    }
+
+    private static TestShardedItem item(Long tenant) {
+        TestShardedItem item = new TestShardedItem();
+        item.setTenant(tenant);
+        item.setScore(tenant);
+        return item;
+    }
+
+    private static List<Long> scores(List<TestShardedItem> items) {
+        List<Long> scores = new ArrayList<>();
+        for (TestShardedItem item : items) {
+            scores.add(item.getScore());
+        }
+        return scores;
+    }
+}
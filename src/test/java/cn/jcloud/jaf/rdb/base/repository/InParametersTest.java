@@ -0,0 +1,49 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class InParametersTest {
+
+    @Test
+    public void padsChunkToPowerOfTwoWithLastValue() {
+        List<Object> chunk = InParameters.chunk(Arrays.asList(1L, 2L, 3L, 4L, 5L), 0);
+        assertEquals(Arrays.<Object>asList(1L, 2L, 3L, 4L, 5L, 5L, 5L, 5L), chunk);
+        assertEquals(Arrays.<Object>asList(7L), InParameters.chunk(Arrays.asList(7L), 0));
+        assertEquals(4, InParameters.chunk(Arrays.asList(1L, 2L, 3L, 4L), 0).size());
+    }
+
+    @Test
+    public void splitsIntoChunksOfAtMostChunkSize() {
+        List<Long> values = new ArrayList<>();
+        for (long i = 0; i < InParameters.CHUNK_SIZE + 3; i++) {
+            values.add(i);
+        }
+        assertEquals(0, InParameters.chunkCount(0));
+        assertEquals(1, InParameters.chunkCount(InParameters.CHUNK_SIZE));
+        assertEquals(2, InParameters.chunkCount(values.size()));
+
+        List<Object> first = InParameters.chunk(values, 0);
+        assertEquals(InParameters.CHUNK_SIZE, first.size());
+        assertEquals(0L, first.get(0));
+        assertEquals((long) InParameters.CHUNK_SIZE - 1, first.get(InParameters.CHUNK_SIZE - 1));
+
+        List<Object> second = InParameters.chunk(values, 1);
+        assertEquals(Arrays.<Object>asList((long) InParameters.CHUNK_SIZE, (long) InParameters.CHUNK_SIZE + 1,
+                (long) InParameters.CHUNK_SIZE + 2, (long) InParameters.CHUNK_SIZE + 2), second);
+    }
+
+    @Test
+    public void convertsArraysAndCommaDelimitedStrings() {
+        assertEquals(Arrays.<Object>asList(1L, 2L), InParameters.toList(new Long[]{1L, 2L}));
+        assertEquals(Arrays.<Object>asList(1, 2), InParameters.toList(new int[]{1, 2}));
+        assertEquals(Arrays.<Object>asList("a", "b"), InParameters.toList("a,b"));
+        assertEquals(2, InParameters.size(new int[]{1, 2}));
+        assertEquals(0, InParameters.size(new Long[0]));
+    }
+}
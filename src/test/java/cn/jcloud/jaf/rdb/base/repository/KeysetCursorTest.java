@@ -0,0 +1,38 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import org.junit.Test;
+import org.springframework.data.domain.Sort;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class KeysetCursorTest {
+
+    private static final Sort SORT = new Sort(Sort.Direction.DESC, "createTime")
+            .and(new Sort("name")).and(new Sort("id"));
+
+    private static final Class<?>[] TYPES = {Date.class, String.class, Long.class};
+
+    @Test
+    public void roundTripsValuesIncludingNullsAndSeparators() {
+        Object[] values = {new Date(1500000000000L), null, 42L};
+        assertArrayEquals(values, KeysetCursor.decode(KeysetCursor.encode(SORT, values), SORT, TYPES));
+
+        Object[] special = {null, "a~b!c 中文", 7L};
+        assertArrayEquals(special, KeysetCursor.decode(KeysetCursor.encode(SORT, special), SORT, TYPES));
+    }
+
+    @Test(expected = JafI18NException.class)
+    public void rejectsCursorOfDifferentSort() {
+        String cursor = KeysetCursor.encode(SORT, new Object[]{new Date(), "x", 1L});
+        Sort other = new Sort(Sort.Direction.ASC, "createTime").and(new Sort("name")).and(new Sort("id"));
+        KeysetCursor.decode(cursor, other, TYPES);
+    }
+
+    @Test(expected = JafI18NException.class)
+    public void rejectsMalformedCursor() {
+        KeysetCursor.decode("abc", SORT, TYPES);
+    }
+}
@@ -0,0 +1,176 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.rdb.support.H2Support;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ListParamAsyncExecutorTest {
+
+    /*
+     * 与执行器的排队倍数一致：并发数为1时最多容纳1个执行中与16个等待中的任务
+     */
+    private static final int CAPACITY = 17;
+
+    private static GenericApplicationContext context;
+
+    private static EntityManagerFactory emf;
+
+    private ListParamAsyncExecutor executor;
+
+    private CountDownLatch release;
+
+    private AtomicInteger running;
+
+    private AtomicInteger maxRunning;
+
+    @BeforeClass
+    public static void setUpClass() {
+        context = H2Support.initSpringContext();
+        emf = H2Support.createEntityManagerFactory(H2Support.dataSource("list_param_async"));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        emf.close();
+        context.close();
+    }
+
+    @Before
+    public void setUp() {
+        executor = new ListParamAsyncExecutor();
+        executor.setMaxConcurrency(1);
+        release = new CountDownLatch(1);
+        running = new AtomicInteger();
+        maxRunning = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.close();
+    }
+
+    @Test
+    public void runsInReadOnlyThread() throws Exception {
+        ListenableFuture<Boolean> future = executor.submit(emf,
+                new ListParamAsyncExecutor.EntityManagerCallback<Boolean>() {
+                    @Override
+                    public Boolean doInEntityManager(EntityManager em) {
+                        return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+                    }
+                });
+        assertTrue(future.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void rejectsWhenPlatformQueueIsFull() throws Exception {
+        List<ListenableFuture<Integer>> futures = fill();
+        assertRejected();
+
+        release.countDown();
+        awaitAll(futures);
+        assertEquals(1, maxRunning.get());
+        executor.submit(emf, blocking()).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void limitsPendingVirtualThreadTasks() throws Exception {
+        useVirtualThreads();
+        List<ListenableFuture<Integer>> futures = fill();
+        assertRejected();
+
+        release.countDown();
+        awaitAll(futures);
+        assertEquals("信号量限制虚拟线程的并发数", 1, maxRunning.get());
+        //完成的任务已释放全部名额
+        awaitAll(fill());
+    }
+
+    @Test
+    public void releasesPendingSlotOnCancel() throws Exception {
+        useVirtualThreads();
+        List<ListenableFuture<Integer>> futures = fill();
+        assertTrue(futures.get(CAPACITY - 1).cancel(true));
+        futures.set(CAPACITY - 1, executor.submit(emf, blocking()));
+        assertRejected();
+
+        release.countDown();
+        awaitAll(futures);
+    }
+
+    private void useVirtualThreads() {
+        boolean supported;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            supported = true;
+        } catch (NoSuchMethodException e) {
+            supported = false;
+        }
+        Assume.assumeTrue("当前JDK不支持虚拟线程", supported);
+        executor.setVirtualThreads(true);
+    }
+
+    private List<ListenableFuture<Integer>> fill() {
+        List<ListenableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < CAPACITY; i++) {
+            futures.add(executor.submit(emf, blocking()));
+        }
+        return futures;
+    }
+
+    private void assertRejected() {
+        try {
+            executor.submit(emf, blocking());
+            fail("超出并发数与排队上限的任务应被拒绝");
+        } catch (RejectedExecutionException e) {
+            //expected
+        }
+    }
+
+    private static void awaitAll(List<ListenableFuture<Integer>> futures) throws Exception {
+        for (ListenableFuture<Integer> future : futures) {
+            assertEquals(Integer.valueOf(1), future.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private ListParamAsyncExecutor.EntityManagerCallback<Integer> blocking() {
+        return new ListParamAsyncExecutor.EntityManagerCallback<Integer>() {
+            @Override
+            public Integer doInEntityManager(EntityManager em) {
+                int current = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                }
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                }
+                return 1;
+            }
+        };
+    }
+}
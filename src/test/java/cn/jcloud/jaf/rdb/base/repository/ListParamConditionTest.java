@@ -0,0 +1,132 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.query.Condition;
+import cn.jcloud.jaf.common.query.ListParam;
+import cn.jcloud.jaf.rdb.support.H2Support;
+import cn.jcloud.jaf.rdb.support.TestItem;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.support.JpaEntityInformationSupport;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ListParamConditionTest {
+
+    private static final int ROWS = InParameters.CHUNK_SIZE + 88;
+
+    private static GenericApplicationContext context;
+
+    private static EntityManagerFactory emf;
+
+    private static EntityManager em;
+
+    private static List<Long> ids;
+
+    @BeforeClass
+    public static void setUpClass() {
+        context = H2Support.initSpringContext();
+        emf = H2Support.createEntityManagerFactory(H2Support.dataSource("list_param_condition"));
+        em = emf.createEntityManager();
+        ids = new ArrayList<>(ROWS);
+        em.getTransaction().begin();
+        for (long i = 0; i < ROWS; i++) {
+            TestItem item = new TestItem();
+            item.setName(i % 2 == 0 ? null : "n" + i);
+            item.setScore(i);
+            em.persist(item);
+            ids.add(item.getId());
+        }
+        em.getTransaction().commit();
+        em.clear();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        em.close();
+        emf.close();
+        context.close();
+    }
+
+    @Test
+    public void binaryArraysAreSingleValues() {
+        assertEquals(PredicateOperator.EQ, PredicateOperator.of(condition("name", "EQ", new byte[]{1, 2})));
+        assertEquals(PredicateOperator.NE, PredicateOperator.of(condition("name", "NE", new char[]{'a'})));
+        assertEquals(PredicateOperator.IN, PredicateOperator.of(condition("id", "EQ", new long[]{1L, 2L})));
+    }
+
+    @Test
+    public void nullValueMatchesNullRows() {
+        assertEquals(PredicateOperator.IS_NULL, PredicateOperator.of(condition("name", "EQ", null)));
+        assertEquals(ROWS / 2, list(condition("name", "EQ", null)).size());
+        assertEquals(ROWS / 2, list(condition("name", "NE", null)).size());
+    }
+
+    @Test
+    public void emptyListsMatchNoneOrAll() {
+        Condition in = condition("id", "EQ", Collections.emptyList());
+        Condition notIn = condition("id", "NE", Collections.emptyList());
+        assertEquals(PredicateOperator.NONE, PredicateOperator.of(in));
+        assertEquals(PredicateOperator.ALL, PredicateOperator.of(notIn));
+        assertEquals(0, list(in).size());
+        assertEquals(ROWS, list(notIn).size());
+    }
+
+    @Test
+    public void chunksLongInLists() {
+        //超过一批，第二批补齐到2的幂
+        assertEquals(ROWS, list(condition("id", "EQ", ids)).size());
+        List<Long> excluded = ids.subList(0, InParameters.CHUNK_SIZE + 1);
+        assertEquals(ROWS - excluded.size(), list(condition("id", "NE", new ArrayList<>(excluded))).size());
+    }
+
+    @Test
+    public void bindsBetweenBounds() {
+        Assume.assumeTrue("jaf-common的Operator尚无BETWEEN", hasOperator("BETWEEN"));
+        assertEquals(11, list(condition("score", "BETWEEN", Arrays.asList(10L, 20L))).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void findsByIdsInChunksIgnoringDuplicates() {
+        BaseRepositoryImpl<TestItem, Long> repository = new BaseRepositoryImpl<>(
+                (JpaEntityInformation<TestItem, Long>) JpaEntityInformationSupport.getEntityInformation(
+                        TestItem.class, em), em);
+        List<Long> requested = new ArrayList<>(ids);
+        requested.addAll(ids.subList(0, 10));
+        assertEquals(ROWS, repository.findAllByIdsBatched(requested).size());
+        assertEquals(0, repository.findAllByIdsBatched(Collections.<Long>emptyList()).size());
+    }
+
+    private static List<TestItem> list(Condition condition) {
+        ListParam<TestItem> listParam = H2Support.listParam(0, ROWS * 2, false, null, condition);
+        return ListParamJpaUtil.queryList(em, listParam, TestItem.class);
+    }
+
+    private static Condition condition(String field, String operator, Object value) {
+        Class<?> valueType = "name".equals(field) ? String.class : Long.class;
+        return H2Support.condition(field, operator, value, valueType);
+    }
+
+    private static boolean hasOperator(String name) {
+        Class<?> operatorType = new DirectFieldAccessor(H2Support.condition("id", "EQ", 1L, Long.class))
+                .getPropertyType("operator");
+        for (Object constant : operatorType.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,33 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.query.Condition;
+import cn.jcloud.jaf.rdb.support.H2Support;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ListParamCountCacheTest {
+
+    @Test
+    public void arrayValuesWithSameElementsShareKey() {
+        String first = ListParamCountCache.key("shape", conditions(new Long[]{1L, 2L}));
+        String second = ListParamCountCache.key("shape", conditions(new Long[]{1L, 2L}));
+        assertEquals(first, second);
+        assertNotEquals(first, ListParamCountCache.key("shape", conditions(new Long[]{1L, 3L})));
+    }
+
+    @Test
+    public void datesDifferingInMillisecondsHaveDifferentKeys() {
+        assertNotEquals(ListParamCountCache.key("shape", conditions(new Date(1000L))),
+                ListParamCountCache.key("shape", conditions(new Date(1001L))));
+    }
+
+    private static List<Condition> conditions(Object value) {
+        return Collections.singletonList(H2Support.condition("id", "EQ", value, value.getClass()));
+    }
+}
@@ -0,0 +1,182 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.query.Condition;
+import cn.jcloud.jaf.rdb.support.H2Support;
+import cn.jcloud.jaf.rdb.support.TestItem;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ListParamIndexAdvisorTest {
+
+    private static GenericApplicationContext context;
+
+    private static EntityManagerFactory emf;
+
+    private EntityManager em;
+
+    private ExplainTemplate template;
+
+    private ListParamIndexAdvisor advisor;
+
+    @BeforeClass
+    public static void setUpClass() {
+        context = H2Support.initSpringContext();
+        emf = H2Support.createEntityManagerFactory(H2Support.dataSource("index_advisor"));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        emf.close();
+        context.close();
+    }
+
+    @Before
+    public void setUp() {
+        em = emf.createEntityManager();
+        template = new ExplainTemplate();
+        advisor = new ListParamIndexAdvisor();
+        advisor.setEnabled(true);
+        advisor.setJdbcTemplate(template);
+    }
+
+    @After
+    public void tearDown() {
+        em.close();
+    }
+
+    @Test
+    public void ordersEqualitiesThenSortThenRange() {
+        Map<String, Object> advice = advise(
+                new Sort(new Sort.Order(Sort.Direction.ASC, "name"), new Sort.Order(Sort.Direction.ASC, "weight")),
+                condition("score", "GE", 10L),
+                condition("level", "EQ", Arrays.asList(TestItem.Level.LOW, TestItem.Level.HIGH)),
+                condition("name", "LIKE", "ab%"),
+                condition("status", "EQ", 1));
+        assertEquals(Arrays.asList("status", "level", "name", "weight", "score"), advice.get("columns"));
+        assertEquals("ALTER TABLE `test_item` ADD INDEX `idx_status_level_name_weight_score`"
+                + " (`status`, `level`, `name`(191), `weight`, `score`)", advice.get("ddl"));
+    }
+
+    @Test
+    public void skipsSortWithMixedDirections() {
+        Map<String, Object> advice = advise(
+                new Sort(new Sort.Order(Sort.Direction.ASC, "weight"), new Sort.Order(Sort.Direction.DESC, "name")),
+                condition("score", "LT", 10L),
+                condition("status", "EQ", 1));
+        assertEquals(Arrays.asList("status", "score"), advice.get("columns"));
+    }
+
+    @Test
+    public void ignoresPredicatesThatCannotUseIndex() {
+        Map<String, Object> advice = advise(null,
+                condition("name", "LIKE", "%ab"),
+                condition("score", "NE", 1L),
+                condition("weight", "NE", null),
+                condition("status", "EQ", 1));
+        assertEquals(Collections.singletonList("status"), advice.get("columns"));
+        assertEquals("ALTER TABLE `test_item` ADD INDEX `idx_status` (`status`)", advice.get("ddl"));
+    }
+
+    @Test
+    public void usesPrefixOnlyForLongStringColumns() {
+        Map<String, Object> advice = advise(new Sort(Sort.Direction.ASC, "score"),
+                condition("name", "EQ", "a"));
+        assertEquals("ALTER TABLE `test_item` ADD INDEX `idx_name_score` (`name`(191), `score`)",
+                advice.get("ddl"));
+    }
+
+    @Test
+    public void reportsExistingLeftmostPrefixIndex() {
+        template.indexes.put("idx_status_score_name", Arrays.asList("status", "SCORE", "name"));
+        Map<String, Object> advice = advise(null,
+                condition("score", "GT", 10L),
+                condition("status", "EQ", 1));
+        assertEquals("idx_status_score_name", advice.get("coveredBy"));
+        assertNull(advice.get("ddl"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> advise(Sort sort, Condition... conditions) {
+        advisor.record(em, "list|shape", TestItem.class, Arrays.asList(conditions), sort, 20);
+        Map<String, Object> report = advisor.report();
+        List<Map<String, Object>> advices = (List<Map<String, Object>>) report.get("advices");
+        assertEquals(1, advices.size());
+        return advices.get(0);
+    }
+
+    private static Condition condition(String field, String operator, Object value) {
+        Class<?> valueType = "level".equals(field) ? TestItem.Level.class
+                : "name".equals(field) ? String.class : value instanceof Integer ? Integer.class : Long.class;
+        return H2Support.condition(field, operator, value, valueType);
+    }
+
+    /*
+     * 模拟MySQL的EXPLAIN、SHOW INDEX及information_schema输出：全表扫描且filesort，name为varchar(255)
+     */
+    private static class ExplainTemplate extends JdbcTemplate {
+
+        private final Map<String, List<String>> indexes = new LinkedHashMap<>();
+
+        ExplainTemplate() {
+            indexes.put("PRIMARY", Collections.singletonList("id"));
+        }
+
+        @Override
+        public List<Map<String, Object>> queryForList(String sql) throws DataAccessException {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map.Entry<String, List<String>> index : indexes.entrySet()) {
+                for (String column : index.getValue()) {
+                    rows.add(row("Key_name", index.getKey(), "Column_name", column));
+                }
+            }
+            return rows;
+        }
+
+        @Override
+        public List<Map<String, Object>> queryForList(String sql, Object... args) throws DataAccessException {
+            if (sql.startsWith("EXPLAIN ")) {
+                return Collections.singletonList(row("type", "ALL", "Extra", "Using where; Using filesort"));
+            }
+            return Arrays.asList(
+                    column("id", "bigint", null),
+                    column("name", "varchar", 255L),
+                    column("status", "int", null),
+                    column("score", "bigint", null),
+                    column("weight", "double", null),
+                    column("level", "varchar", 32L),
+                    column("flagged", "char", 1L));
+        }
+
+        private static Map<String, Object> column(String name, String dataType, Long length) {
+            Map<String, Object> row = row("COLUMN_NAME", name, "DATA_TYPE", dataType);
+            row.put("CHARACTER_MAXIMUM_LENGTH", length);
+            return row;
+        }
+
+        private static Map<String, Object> row(String key1, Object value1, String key2, Object value2) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put(key1, value1);
+            row.put(key2, value2);
+            return row;
+        }
+    }
+}
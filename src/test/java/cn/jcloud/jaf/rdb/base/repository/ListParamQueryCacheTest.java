@@ -0,0 +1,87 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.rdb.support.H2Support;
+import cn.jcloud.jaf.rdb.support.TestItem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ListParamQueryCacheTest {
+
+    private GenericApplicationContext context;
+
+    private EntityManagerFactory emf;
+
+    private EntityManager em;
+
+    private ListParamQueryCache cache;
+
+    @Before
+    public void setUp() {
+        context = H2Support.initSpringContext();
+        emf = H2Support.createEntityManagerFactory(H2Support.dataSource("query_cache"));
+        em = emf.createEntityManager();
+        cache = new ListParamQueryCache();
+    }
+
+    @After
+    public void tearDown() {
+        em.close();
+        emf.close();
+        context.close();
+    }
+
+    @Test
+    public void cachesQueryWithOnlyNamedParameters() {
+        cache.put("named", namedParameterQuery());
+        assertEquals(1, cache.size());
+        TypedQuery<TestItem> query = cache.createQuery(em, "named", TestItem.class);
+        assertNotNull(query);
+        query.setParameter("name0", "a");
+        assertEquals(0, query.getResultList().size());
+    }
+
+    @Test
+    public void refusesQueryWithCriteriaLiteral() {
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<TestItem> criteriaQuery = builder.createQuery(TestItem.class);
+        Root<TestItem> root = criteriaQuery.from(TestItem.class);
+        criteriaQuery.where(builder.equal(root.get("name"), builder.literal("a")));
+        cache.put("literal", em.createQuery(criteriaQuery));
+        assertEquals(0, cache.size());
+        assertNull(cache.createQuery(em, "literal", TestItem.class));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        cache.setMaxSize(2);
+        cache.put("a", namedParameterQuery());
+        cache.put("b", namedParameterQuery());
+        assertNotNull(cache.createQuery(em, "a", TestItem.class));
+        cache.put("c", namedParameterQuery());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.createQuery(em, "b", TestItem.class));
+        assertNotNull(cache.createQuery(em, "a", TestItem.class));
+    }
+
+    private TypedQuery<TestItem> namedParameterQuery() {
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<TestItem> criteriaQuery = builder.createQuery(TestItem.class);
+        Root<TestItem> root = criteriaQuery.from(TestItem.class);
+        criteriaQuery.where(builder.equal(root.get("name"), builder.parameter(String.class, "name0")));
+        return em.createQuery(criteriaQuery);
+    }
+}
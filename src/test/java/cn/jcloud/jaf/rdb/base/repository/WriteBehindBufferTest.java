@@ -0,0 +1,179 @@
+package cn.jcloud.jaf.rdb.base.repository;
+
+import cn.jcloud.jaf.common.exception.JafI18NException;
+import cn.jcloud.jaf.rdb.support.H2Support;
+import cn.jcloud.jaf.rdb.support.TestItem;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class WriteBehindBufferTest {
+
+    private static GenericApplicationContext context;
+
+    private static DataSource dataSource;
+
+    /*
+     * 缓冲按实体类型持有EntityManagerFactory，整个测试类共用一个
+     */
+    private static EntityManagerFactory emf;
+
+    private static final WriteBehindBuffer BUFFER = WriteBehindBuffer.getInstance();
+
+    private Long id;
+
+    @BeforeClass
+    public static void setUpClass() {
+        context = H2Support.initSpringContext();
+        dataSource = H2Support.dataSource("write_behind");
+        emf = H2Support.createEntityManagerFactory(dataSource);
+        //后台线程不在测试期间写入，由测试显式flush
+        BUFFER.setFlushIntervalMillis(TimeUnit.HOURS.toMillis(1));
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        BUFFER.close();
+        BUFFER.setFlushIntervalMillis(WriteBehindBuffer.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        emf.close();
+        context.close();
+    }
+
+    @Before
+    public void setUp() {
+        BUFFER.setJdbcTemplate(new JdbcTemplate(dataSource));
+        TestItem item = new TestItem();
+        item.setStatus(1);
+        item.setScore(10L);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(item);
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+        id = item.getId();
+    }
+
+    @After
+    public void tearDown() {
+        BUFFER.setJdbcTemplate(new JdbcTemplate(dataSource));
+        BUFFER.flush();
+    }
+
+    @Test
+    public void mergesIncrementsOntoLastAssignment() {
+        BUFFER.increment(emf, TestItem.class, id, "status", 2L);
+        BUFFER.increment(emf, TestItem.class, id, "status", 3L);
+        BUFFER.increment(emf, TestItem.class, id, "score", 100L);
+        BUFFER.set(emf, TestItem.class, id, "score", 5L);
+        BUFFER.increment(emf, TestItem.class, id, "score", 2L);
+        BUFFER.flush();
+        assertEquals(Long.valueOf(6L), column("status"));
+        assertEquals(Long.valueOf(7L), column("score"));
+    }
+
+    @Test
+    public void rejectsIncrementOnNonIntegralField() {
+        try {
+            BUFFER.increment(emf, TestItem.class, id, "weight", 1L);
+            fail("浮点字段不能累加");
+        } catch (JafI18NException e) {
+            //expected
+        }
+        try {
+            BUFFER.set(emf, TestItem.class, id, "score", 1.5D);
+            fail("整数字段的赋值必须为整数");
+        } catch (JafI18NException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void rejectsEnumAndConvertedFields() {
+        try {
+            BUFFER.set(emf, TestItem.class, id, "level", TestItem.Level.HIGH);
+            fail("枚举字段不支持合并写");
+        } catch (JafI18NException e) {
+            //expected
+        }
+        try {
+            BUFFER.set(emf, TestItem.class, id, "flagged", Boolean.TRUE);
+            fail("AttributeConverter字段不支持合并写");
+        } catch (JafI18NException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void keepsFailedAssignmentUnderNewerIncrement() {
+        BUFFER.set(emf, TestItem.class, id, "score", 5L);
+        BUFFER.setJdbcTemplate(new FailingJdbcTemplate(dataSource, "score", 2L));
+        BUFFER.flush();
+        assertEquals(Long.valueOf(10L), column("score"));
+
+        BUFFER.setJdbcTemplate(new JdbcTemplate(dataSource));
+        BUFFER.flush();
+        assertEquals(Long.valueOf(7L), column("score"));
+    }
+
+    @Test
+    public void keepsFailedNullAssignmentUnderNewerIncrement() {
+        BUFFER.set(emf, TestItem.class, id, "score", null);
+        BUFFER.setJdbcTemplate(new FailingJdbcTemplate(dataSource, "score", 2L));
+        BUFFER.flush();
+
+        BUFFER.setJdbcTemplate(new JdbcTemplate(dataSource));
+        BUFFER.flush();
+        assertNull(column("score"));
+    }
+
+    private Long column(String column) {
+        return new JdbcTemplate(dataSource).queryForObject("select " + column + " from test_item where id = ?",
+                Long.class, id);
+    }
+
+    /*
+     * 写入时先模拟一次并发累加，再以可重试异常失败一次
+     */
+    private class FailingJdbcTemplate extends JdbcTemplate {
+
+        private final String field;
+
+        private final long delta;
+
+        private boolean failed;
+
+        FailingJdbcTemplate(DataSource dataSource, String field, long delta) {
+            super(dataSource);
+            this.field = field;
+            this.delta = delta;
+        }
+
+        @Override
+        public int update(String sql, Object... args) throws DataAccessException {
+            if (failed) {
+                return super.update(sql, args);
+            }
+            failed = true;
+            BUFFER.increment(emf, TestItem.class, id, field, delta);
+            throw new QueryTimeoutException("simulated");
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package cn.jcloud.jaf.rdb.datasource;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DruidPoolAutoSizerTest {
+
+    private static final long WAIT_THRESHOLD_MILLIS = 10L;
+
+    private SampledDataSource dataSource;
+
+    private DruidPoolAutoSizer sizer;
+
+    @Before
+    public void setUp() {
+        dataSource = new SampledDataSource();
+        dataSource.setMaxActive(20);
+        dataSource.setMinIdle(2);
+    }
+
+    @After
+    public void tearDown() {
+        if (sizer != null) {
+            sizer.close();
+        }
+        dataSource.close();
+    }
+
+    @Test
+    public void growsWhenAverageWaitExceedsThreshold() {
+        sizer(4, 40);
+        dataSource.activeCount = 8;
+        dataSource.waitCount = 2;
+        dataSource.waitMillis = 100;
+        sizer.adjust();
+        assertEquals(25, dataSource.getMaxActive());
+        assertEquals(8, dataSource.getMinIdle());
+    }
+
+    @Test
+    public void keepsSizeWhenAverageWaitBelowThreshold() {
+        sizer(4, 40);
+        dataSource.activeCount = 15;
+        dataSource.waitCount = 10;
+        dataSource.waitMillis = 50;
+        sizer.adjust();
+        assertEquals(20, dataSource.getMaxActive());
+    }
+
+    @Test
+    public void growsWithWaitingThreadsUpToUpperBound() {
+        dataSource.setMaxActive(38);
+        sizer(4, 40);
+        dataSource.activeCount = 38;
+        dataSource.waitThreadCount = 3;
+        sizer.adjust();
+        assertEquals(40, dataSource.getMaxActive());
+        sizer.adjust();
+        assertEquals(40, dataSource.getMaxActive());
+        assertEquals(38, dataSource.getMinIdle());
+    }
+
+    @Test
+    public void shrinksIdlePoolDownToLowerBound() {
+        sizer(17, 40);
+        dataSource.activeCount = 2;
+        sizer.adjust();
+        assertEquals(18, dataSource.getMaxActive());
+        sizer.adjust();
+        assertEquals(17, dataSource.getMaxActive());
+        sizer.adjust();
+        assertEquals(17, dataSource.getMaxActive());
+        assertEquals(2, dataSource.getMinIdle());
+    }
+
+    @Test
+    public void minIdleFollowsP95OfSlidingWindow() {
+        //maxActive上下限相同，仅观察minIdle
+        sizer(20, 20);
+        sample(2, 57);
+        sample(30, 3);
+        assertEquals("60个采样中3个峰值不影响p95", 2, dataSource.getMinIdle());
+        sample(30, 1);
+        assertEquals("峰值占比超过5%时p95取峰值", 20, dataSource.getMinIdle());
+        sample(3, 60);
+        assertEquals("窗口滑过后峰值不再计入", 3, dataSource.getMinIdle());
+    }
+
+    private void sizer(int lower, int upper) {
+        //后台线程不在测试期间调整，由测试显式调用
+        sizer = new DruidPoolAutoSizer(dataSource, lower, upper, WAIT_THRESHOLD_MILLIS, 3600000L);
+    }
+
+    private void sample(int activeCount, int times) {
+        dataSource.activeCount = activeCount;
+        for (int i = 0; i < times; i++) {
+            sizer.adjust();
+        }
+    }
+
+    /*
+     * 以指定的活跃数与等待统计代替真实连接池的运行状态
+     */
+    private static class SampledDataSource extends DruidDataSource {
+
+        private static final long serialVersionUID = 1L;
+
+        private int activeCount;
+
+        private long waitCount;
+
+        private long waitMillis;
+
+        private int waitThreadCount;
+
+        @Override
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        @Override
+        public long getNotEmptyWaitCount() {
+            return waitCount;
+        }
+
+        @Override
+        public long getNotEmptyWaitMillis() {
+            return waitMillis;
+        }
+
+        @Override
+        public int getWaitThreadCount() {
+            return waitThreadCount;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package cn.jcloud.jaf.rdb.datasource;
+
+import cn.jcloud.jaf.rdb.support.H2Support;
+import com.alibaba.druid.pool.DruidDataSource;
+import com.alibaba.druid.pool.ValidConnectionCheckerAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReadWriteRoutingDataSourceTest {
+
+    private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+
+    private DruidDataSource primary;
+
+    private ReadWriteRoutingDataSource routing;
+
+    @Before
+    public void setUp() {
+        int sequence = DATABASE_SEQUENCE.incrementAndGet();
+        primary = druid("rw_primary" + sequence, "primary");
+        ReadWriteRoutingDataSource.Replica replicaA =
+                new ReadWriteRoutingDataSource.Replica("a", druid("rw_replica_a" + sequence, "a"), 2);
+        ReadWriteRoutingDataSource.Replica replicaB =
+                new ReadWriteRoutingDataSource.Replica("b", druid("rw_replica_b" + sequence, "b"), 1);
+        long connectsBefore = primary.getConnectCount();
+        //后台校验不在测试期间执行，由测试显式调用
+        routing = new ReadWriteRoutingDataSource(primary, Arrays.asList(replicaA, replicaB),
+                new QueryValidConnectionChecker(), 3600000L);
+        assertEquals("构造时不应从主库获取连接", connectsBefore, primary.getConnectCount());
+    }
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        }
+        routing.close();
+    }
+
+    @Test
+    public void routesWritesToPrimary() throws SQLException {
+        assertEquals("primary", node());
+    }
+
+    @Test
+    public void routesReadOnlyToReplicasByWeight() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 6; i++) {
+            String node = node();
+            counts.put(node, counts.containsKey(node) ? counts.get(node) + 1 : 1);
+        }
+        assertEquals(Integer.valueOf(4), counts.get("a"));
+        assertEquals(Integer.valueOf(2), counts.get("b"));
+        assertNull(counts.get("primary"));
+    }
+
+    @Test
+    public void skipsReplicaFailingCheck() throws SQLException {
+        ReadWriteRoutingDataSource.Replica replicaB = routing.getReplicas().get(1);
+        replicaB.getDataSource().close();
+        routing.checkReplicas();
+        assertFalse(replicaB.isAvailable());
+        assertTrue(routing.getReplicas().get(0).isAvailable());
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        for (int i = 0; i < 6; i++) {
+            assertEquals("a", node());
+        }
+    }
+
+    @Test
+    public void fallsBackToPrimaryWithoutAvailableReplica() throws SQLException {
+        for (ReadWriteRoutingDataSource.Replica replica : routing.getReplicas()) {
+            replica.getDataSource().close();
+        }
+        routing.checkReplicas();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertEquals("primary", node());
+    }
+
+    /*
+     * 以连接实际所在的库区分路由结果
+     */
+    private String node() throws SQLException {
+        try (Connection con = routing.getConnection();
+             Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("select name from node")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    private static DruidDataSource druid(String database, String node) {
+        DriverManagerDataSource h2 = H2Support.dataSource(database);
+        DruidDataSource dataSource = new DruidDataSource();
+        dataSource.setDriverClassName("org.h2.Driver");
+        dataSource.setUrl(h2.getUrl());
+        dataSource.setUsername(h2.getUsername());
+        dataSource.setPassword(h2.getPassword());
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(h2);
+        jdbcTemplate.execute("create table node (name varchar(32))");
+        jdbcTemplate.update("insert into node (name) values (?)", node);
+        return dataSource;
+    }
+
+    private static final class QueryValidConnectionChecker extends ValidConnectionCheckerAdapter {
+        @Override
+        public boolean isValidConnection(Connection conn, String query, int validationQueryTimeout) throws Exception {
+            try (Statement st = conn.createStatement()) {
+                st.execute(query);
+                return true;
+            }
+        }
+    }
+}
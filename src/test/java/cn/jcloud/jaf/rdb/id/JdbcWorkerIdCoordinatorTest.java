@@ -0,0 +1,63 @@
+package cn.jcloud.jaf.rdb.id;
+
+import cn.jcloud.jaf.rdb.support.H2Support;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcWorkerIdCoordinatorTest {
+
+    private static final AtomicInteger DATABASE_SEQUENCE = new AtomicInteger();
+
+    private JdbcWorkerIdCoordinator coordinator;
+
+    @Before
+    public void setUp() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(
+                H2Support.dataSource("worker_id" + DATABASE_SEQUENCE.incrementAndGet()));
+        coordinator = new JdbcWorkerIdCoordinator(jdbcTemplate);
+    }
+
+    @Test
+    public void claimsDistinctIdsUntilExhausted() {
+        long first = coordinator.acquire("a", 1, 100, 160);
+        long second = coordinator.acquire("b", 1, 100, 160);
+        assertTrue(first >= 0 && first <= 1);
+        assertEquals(1 - first, second);
+        assertEquals(-1, coordinator.acquire("c", 1, 100, 160));
+    }
+
+    @Test
+    public void renewsOnlyForOwner() {
+        long workerId = coordinator.acquire("a", 0, 100, 160);
+        assertEquals(0, workerId);
+        assertTrue(coordinator.renew(workerId, "a", 220));
+        assertFalse(coordinator.renew(workerId, "b", 220));
+        //续约后原到期时间之后仍被占用
+        assertEquals(-1, coordinator.acquire("b", 0, 200, 260));
+    }
+
+    @Test
+    public void deniesLiveLeaseAndTakesOverAfterExpiry() {
+        assertEquals(0, coordinator.acquire("a", 0, 100, 160));
+        assertEquals(-1, coordinator.acquire("b", 0, 160, 220));
+        assertEquals(0, coordinator.acquire("b", 0, 161, 221));
+        //被接管后原占用者不能再续约
+        assertFalse(coordinator.renew(0, "a", 230));
+        assertTrue(coordinator.renew(0, "b", 230));
+    }
+
+    @Test
+    public void releasedIdIsReusableOnlyAfterReleaseSecond() {
+        assertEquals(0, coordinator.acquire("a", 0, 100, 160));
+        coordinator.release(0, "a", 120);
+        assertEquals(-1, coordinator.acquire("b", 0, 120, 180));
+        assertEquals(0, coordinator.acquire("b", 0, 121, 181));
+    }
+}
@@ -0,0 +1,120 @@
+package cn.jcloud.jaf.rdb.id;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentIdBufferTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void idsAreUniqueAndSegmentsAreLoadedOneAtATime() throws Exception {
+        final AtomicLong second = new AtomicLong(1000L);
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final SegmentIdBuffer buffer = new SegmentIdBuffer("test", new SegmentIdBuffer.SegmentLoader() {
+            @Override
+            public SegmentIdBuffer.Segment load() {
+                int running = inFlight.incrementAndGet();
+                for (int max = maxInFlight.get(); running > max; max = maxInFlight.get()) {
+                    if (maxInFlight.compareAndSet(max, running)) {
+                        break;
+                    }
+                }
+                try {
+                    //放大加载耗时，使号段耗尽时预取尚未完成
+                    Thread.sleep(5L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+                loads.incrementAndGet();
+                return new SegmentIdBuffer.Segment(second.incrementAndGet(), 0L);
+            }
+        });
+
+        final long perThread = SegmentIdBuffer.SEGMENT_SIZE;
+        final Set<Long> ids = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (long i = 0; i < perThread; i++) {
+                        ids.add(buffer.nextId());
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+        assertEquals(THREADS * perThread, ids.size());
+        assertEquals(1, maxInFlight.get());
+        //每个号段恰好用完，另有至多一个预取未使用的号段
+        assertTrue("loads " + loads.get(), loads.get() <= THREADS + 1);
+    }
+
+    @Test
+    public void blockedRefillDoesNotStallOtherBuffers() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger blockedLoads = new AtomicInteger();
+        SegmentIdBuffer blocked = new SegmentIdBuffer("blocked", new SegmentIdBuffer.SegmentLoader() {
+            @Override
+            public SegmentIdBuffer.Segment load() {
+                if (blockedLoads.incrementAndGet() > 1) {
+                    //模拟预借用尽后等待时钟
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new SegmentIdBuffer.Segment(blockedLoads.get(), 0L);
+            }
+        });
+        final CountDownLatch prefetched = new CountDownLatch(2);
+        SegmentIdBuffer other = new SegmentIdBuffer("other", new SegmentIdBuffer.SegmentLoader() {
+            private final AtomicLong second = new AtomicLong();
+
+            @Override
+            public SegmentIdBuffer.Segment load() {
+                prefetched.countDown();
+                return new SegmentIdBuffer.Segment(second.incrementAndGet(), 0L);
+            }
+        });
+        try {
+            for (long i = 0; i < SegmentIdBuffer.SEGMENT_SIZE / 2; i++) {
+                blocked.nextId();
+            }
+            for (long i = 0; i < SegmentIdBuffer.SEGMENT_SIZE / 2; i++) {
+                other.nextId();
+            }
+            //首个号段同步加载，第二个号段由预取线程加载
+            assertTrue(prefetched.await(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cn.jcloud.jaf.rdb.id;
+
+import cn.jcloud.jaf.common.handler.SpringContextHolder;
+import cn.jcloud.jaf.common.util.IdUtils;
+import org.hibernate.id.IdentifierGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkerIdLeaseTest {
+
+    private static final long WORKER_ID = 5L;
+
+    private final List<Long> released = new ArrayList<>();
+
+    private WorkerIdLease lease;
+
+    private GenericApplicationContext context;
+
+    @Before
+    public void setUp() {
+        lease = new WorkerIdLease(new WorkerIdCoordinator() {
+            @Override
+            public long acquire(String owner, long maxWorkerId, long nowSecond, long expireSecond) {
+                return WORKER_ID;
+            }
+
+            @Override
+            public boolean renew(long workerId, String owner, long expireSecond) {
+                return true;
+            }
+
+            @Override
+            public void release(long workerId, String owner, long expireSecond) {
+                released.add(expireSecond);
+            }
+        }, 30L);
+        lease.start();
+        context = new GenericApplicationContext();
+        context.registerBeanDefinition("springContextHolder", new RootBeanDefinition(SpringContextHolder.class));
+        context.getBeanFactory().registerSingleton(WorkerIdLease.BEAN_NAME, lease);
+        context.refresh();
+    }
+
+    @After
+    public void tearDown() {
+        lease.close();
+        context.close();
+    }
+
+    @Test
+    public void generatorUsesLeasedWorkerId() {
+        DistributedIdentifierGenerator generator = new DistributedIdentifierGenerator();
+        Properties params = new Properties();
+        params.setProperty(IdentifierGenerator.JPA_ENTITY_NAME, "LeaseItem");
+        generator.configure(null, params, null);
+        long before = System.currentTimeMillis() / 1000;
+        long id = (Long) generator.generate(null, null);
+        long after = System.currentTimeMillis() / 1000;
+        //首个id的实例内序列为0
+        boolean matched = false;
+        for (long second = before; second <= after; second++) {
+            matched |= id == IdUtils.generateId(second, WORKER_ID, 0L);
+        }
+        assertTrue("id " + id + " 未使用租约的worker id", matched);
+    }
+
+    @Test
+    public void rejectsSecondsBeyondLease() {
+        assertEquals(WORKER_ID, lease.workerId(lease.getExpireSecond()));
+        try {
+            lease.workerId(lease.getExpireSecond() + 1);
+            fail("超出租约的秒数不能取号");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void releaseKeepsIdUntilLastIssuedSecond() {
+        long issued = lease.getExpireSecond();
+        lease.workerId(issued);
+        lease.close();
+        assertEquals(1, released.size());
+        assertEquals(Long.valueOf(issued), released.get(0));
+        assertEquals(-1L, lease.getWorkerId());
+    }
+}
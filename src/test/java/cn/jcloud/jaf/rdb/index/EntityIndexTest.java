@@ -0,0 +1,101 @@
+package cn.jcloud.jaf.rdb.index;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.persistence.Entity;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EntityIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void processorIndexesManagedTypesByBinaryName() throws Exception {
+        File output = compile(folder.newFolder());
+        List<String> lines = Files.readAllLines(new File(output, EntityIndex.INDEX_LOCATION).toPath(),
+                EntityIndex.CHARSET);
+        assertEquals(Arrays.asList("demo.Order", "demo.Order$Line", "demo.other.Base"), lines);
+    }
+
+    @Test
+    public void loadsIndexedClassesUnderBasePackage() throws Exception {
+        File output = compile(folder.newFolder());
+        ClassLoader classLoader = classLoader(output, compile(folder.newFolder()));
+        assertEquals("多个索引文件中的重复类只返回一次",
+                Arrays.asList("demo.Order", "demo.Order$Line", "demo.other.Base"),
+                EntityIndex.load(classLoader, "demo"));
+        assertEquals(Collections.singletonList("demo.other.Base"), EntityIndex.load(classLoader, "demo.other."));
+    }
+
+    @Test
+    public void fallsBackToScanningWithoutMatchingIndex() throws Exception {
+        assertNull("没有索引文件", EntityIndex.load(classLoader(folder.newFolder()), "demo"));
+        File output = compile(folder.newFolder());
+        assertNull("索引中没有该包下的类", EntityIndex.load(classLoader(output), "demox"));
+        assertNull(EntityIndex.load(classLoader(output), "cn.jcloud"));
+    }
+
+    /*
+     * 以本处理器编译示例实体，仅执行注解处理，返回输出目录
+     */
+    private File compile(File output) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        String persistenceClasspath = new File(URI.create(
+                Entity.class.getProtectionDomain().getCodeSource().getLocation().toString())).getPath();
+        List<JavaFileObject> sources = Arrays.asList(
+                source("demo.Order", "package demo;\n"
+                        + "@javax.persistence.Entity public class Order {\n"
+                        + "    @javax.persistence.Embeddable public static class Line {}\n"
+                        + "}"),
+                source("demo.other.Base", "package demo.other;\n"
+                        + "@javax.persistence.MappedSuperclass public class Base {}"),
+                source("demo.Plain", "package demo;\npublic class Plain {}"));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, null,
+                Arrays.asList("-proc:only", "-d", output.getPath(), "-classpath", persistenceClasspath),
+                null, sources);
+        task.setProcessors(Collections.singletonList(new EntityIndexProcessor()));
+        assertTrue("示例实体编译失败", task.call());
+        assertFalse(new File(output, "demo/Order.class").exists());
+        return output;
+    }
+
+    private static JavaFileObject source(String className, final String content) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/')
+                + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return content;
+            }
+        };
+    }
+
+    private static ClassLoader classLoader(File... roots) throws IOException {
+        URL[] urls = new URL[roots.length];
+        for (int i = 0; i < roots.length; i++) {
+            urls[i] = roots[i].toURI().toURL();
+        }
+        return new URLClassLoader(urls, null);
+    }
+}
@@ -0,0 +1,80 @@
+package cn.jcloud.jaf.rdb.json;
+
+import cn.jcloud.jaf.rdb.support.H2Support;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonUserTypeTest {
+
+    private final JsonUserType userType = new JsonUserType();
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = H2Support.dataSource("json_user_type").getConnection();
+        connection.createStatement().execute("create table json_doc (id int primary key, doc clob)");
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.createStatement().execute("drop table json_doc");
+        connection.close();
+    }
+
+    @Test
+    public void bindsUnserializedAndRawDocumentsAsCharacters() throws SQLException {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("name", "测试😀");
+        value.put("tags", Collections.singletonList("a"));
+        String json = "{\"name\":\"测试😀\",\"tags\":[\"a\"]}";
+
+        insert(1, JsonDocument.of(value));
+        insert(2, JsonDocument.wrap(json.getBytes(JsonPaths.UTF_8)));
+        insert(3, null);
+
+        assertEquals(json, select(1));
+        assertEquals(json, select(2));
+        assertNull(select(3));
+    }
+
+    @Test
+    public void readsSerializedDocumentFromReader() throws Exception {
+        char[] chars = new char[64];
+        int length = JsonDocument.of(Collections.singletonMap("a", 1)).openReader().read(chars);
+        assertEquals("{\"a\":1}", new String(chars, 0, length));
+        assertTrue(JsonDocument.wrap("[1]".getBytes(JsonPaths.UTF_8)).openReader().ready());
+    }
+
+    private void insert(int id, JsonDocument document) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement("insert into json_doc (id, doc) values (?, ?)")) {
+            st.setInt(1, id);
+            userType.nullSafeSet(st, document, 2, null);
+            st.executeUpdate();
+        }
+    }
+
+    private String select(int id) throws SQLException {
+        try (PreparedStatement st = connection.prepareStatement("select doc from json_doc where id = ?")) {
+            st.setInt(1, id);
+            try (ResultSet rs = st.executeQuery()) {
+                rs.next();
+                //H2按十六进制转换字符列为字节，以字符串读取绑定结果
+                return rs.getString("doc");
+            }
+        }
+    }
+}
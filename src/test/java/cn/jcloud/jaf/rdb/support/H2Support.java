@@ -0,0 +1,98 @@
+package cn.jcloud.jaf.rdb.support;
+
+import cn.jcloud.jaf.common.handler.SpringContextHolder;
+import cn.jcloud.jaf.common.query.Condition;
+import cn.jcloud.jaf.common.query.ListParam;
+import org.hibernate.cfg.Environment;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.ValidationMode;
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+/**
+ * 测试公共环境：H2内存库(MySQL兼容模式)、EntityManagerFactory及ListParam构造
+ */
+public final class H2Support {
+
+    private H2Support() {
+    }
+
+    /**
+     * 初始化SpringContextHolder，供id生成器使用
+     */
+    public static GenericApplicationContext initSpringContext() {
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.registerBeanDefinition("springContextHolder", new RootBeanDefinition(SpringContextHolder.class));
+        context.refresh();
+        return context;
+    }
+
+    /**
+     * 以库名区分的独立内存库，进程内有效至JVM退出
+     */
+    public static DriverManagerDataSource dataSource(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    /**
+     * 扫描本包实体的EntityManagerFactory，启动时重建表结构
+     */
+    public static EntityManagerFactory createEntityManagerFactory(DataSource dataSource) {
+        return createEntityManagerFactory(dataSource, "create-drop");
+    }
+
+    /**
+     * @param hbm2ddl hibernate.hbm2ddl.auto取值，为"none"时不变更表结构
+     */
+    public static EntityManagerFactory createEntityManagerFactory(DataSource dataSource, String hbm2ddl) {
+        HibernateJpaVendorAdapter vendorAdapter = new HibernateJpaVendorAdapter();
+        vendorAdapter.setShowSql(false);
+
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setJpaVendorAdapter(vendorAdapter);
+        factory.setPackagesToScan(H2Support.class.getPackage().getName());
+        factory.setDataSource(dataSource);
+        factory.getJpaPropertyMap().put("hibernate.ejb.naming_strategy", "org.hibernate.cfg.ImprovedNamingStrategy");
+        factory.getJpaPropertyMap().put(Environment.DIALECT, "org.hibernate.dialect.H2Dialect");
+        factory.getJpaPropertyMap().put(Environment.HBM2DDL_AUTO, hbm2ddl);
+        factory.setValidationMode(ValidationMode.NONE);
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    public static <T> ListParam<T> listParam(int offset, int limit, boolean count, Sort sort, Condition... conditions) {
+        @SuppressWarnings("unchecked")
+        ListParam<T> listParam = BeanUtils.instantiateClass(ListParam.class);
+        DirectFieldAccessor accessor = new DirectFieldAccessor(listParam);
+        accessor.setPropertyValue("conditions", Arrays.asList(conditions));
+        accessor.setPropertyValue("offset", offset);
+        accessor.setPropertyValue("limit", limit);
+        accessor.setPropertyValue("count", count);
+        if (sort != null) {
+            accessor.setPropertyValue("sort", sort);
+        }
+        return listParam;
+    }
+
+    /**
+     * @param operator 操作符枚举名，由属性访问器转换为枚举
+     */
+    public static Condition condition(String field, String operator, Object value, Class<?> valueType) {
+        Condition condition = BeanUtils.instantiateClass(Condition.class);
+        DirectFieldAccessor accessor = new DirectFieldAccessor(condition);
+        accessor.setPropertyValue("field", field);
+        accessor.setPropertyValue("operator", operator);
+        accessor.setPropertyValue("value", value);
+        accessor.setPropertyValue("valueType", valueType);
+        return condition;
+    }
+}
@@ -0,0 +1,81 @@
+package cn.jcloud.jaf.rdb.support;
+
+import cn.jcloud.jaf.common.base.domain.BaseDomain;
+
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+
+/**
+ * 测试实体
+ */
+@Entity
+public class TestItem extends BaseDomain<Long> {
+
+    private String name;
+
+    private Integer status;
+
+    private Long score;
+
+    private Double weight;
+
+    @Enumerated(EnumType.STRING)
+    private Level level;
+
+    @Convert(converter = YesNoConverter.class)
+    private Boolean flagged;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public Long getScore() {
+        return score;
+    }
+
+    public void setScore(Long score) {
+        this.score = score;
+    }
+
+    public Double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(Double weight) {
+        this.weight = weight;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public Boolean getFlagged() {
+        return flagged;
+    }
+
+    public void setFlagged(Boolean flagged) {
+        this.flagged = flagged;
+    }
+
+    public enum Level {
+        LOW, HIGH
+    }
+}
@@ -0,0 +1,34 @@
+package cn.jcloud.jaf.rdb.support;
+
+import cn.jcloud.jaf.common.base.domain.BaseDomain;
+import cn.jcloud.jaf.rdb.shard.Sharded;
+
+import javax.persistence.Entity;
+
+/**
+ * 按租户分片的测试实体
+ */
+@Entity
+@Sharded(key = "tenant")
+public class TestShardedItem extends BaseDomain<Long> {
+
+    private Long tenant;
+
+    private Long score;
+
+    public Long getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(Long tenant) {
+        this.tenant = tenant;
+    }
+
+    public Long getScore() {
+        return score;
+    }
+
+    public void setScore(Long score) {
+        this.score = score;
+    }
+}
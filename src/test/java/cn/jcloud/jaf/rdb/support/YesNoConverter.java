@@ -0,0 +1,21 @@
+package cn.jcloud.jaf.rdb.support;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * 以Y/N存储布尔值的测试转换器
+ */
+@Converter
+public class YesNoConverter implements AttributeConverter<Boolean, String> {
+
+    @Override
+    public String convertToDatabaseColumn(Boolean attribute) {
+        return attribute == null ? null : attribute ? "Y" : "N";
+    }
+
+    @Override
+    public Boolean convertToEntityAttribute(String dbData) {
+        return dbData == null ? null : "Y".equals(dbData);
+    }
+}